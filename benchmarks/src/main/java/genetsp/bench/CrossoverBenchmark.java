@@ -0,0 +1,33 @@
+package genetsp.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The crossovers, breeding two fixed parents into a reused child.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CrossoverBenchmark {
+
+    @Benchmark
+    public Object sequentialCrossover(Instance instance, Tours tours) throws Throwable {
+        return Solver.SEQUENTIAL_CROSSOVER.invokeExact(instance.distances, tours.parentA, tours.parentB, tours.child);
+    }
+
+    @Benchmark
+    public Object edgeAssemblyCrossover(Instance instance, Tours tours) throws Throwable {
+        return Solver.EAX_CROSSOVER.invokeExact(instance.distances, instance.neighbours, tours.parentA, tours.parentB,
+                tours.random, tours.child);
+    }
+}
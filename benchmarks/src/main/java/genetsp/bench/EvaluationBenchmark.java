@@ -0,0 +1,47 @@
+package genetsp.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Tour evaluation, construction and ranking.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluationBenchmark {
+
+    @Benchmark
+    public double calculateCost(Instance instance, Tours tours) throws Throwable {
+        Solver.CALCULATE_COST.invokeExact(tours.mutant, instance.distances);
+        return (double) Solver.GET_COST.invokeExact(tours.mutant);
+    }
+
+    /**
+     * A nearest neighbour tour, as the initial population is built from.
+     */
+    @Benchmark
+    public Object construct(Instance instance, Tours tours) throws Throwable {
+        return Solver.NEW_CHROMOSOME.invokeExact(instance.distances, instance.neighbours, tours.random);
+    }
+
+    /**
+     * Sorting a copy of the population; the copy is a hundred reference
+     * stores, which is small next to the sort.
+     */
+    @Benchmark
+    public Object sortChromosomes(Instance instance, Ranked ranked) throws Throwable {
+        System.arraycopy(instance.population, 0, ranked.chromosomes, 0, Instance.POPULATION);
+        Solver.SORT_CHROMOSOMES.invokeExact((Object) ranked.chromosomes, Instance.POPULATION);
+        return ranked.chromosomes;
+    }
+}
@@ -0,0 +1,39 @@
+package genetsp.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The operators only ExperimentalChromosome has. This class is only built by
+ * the experimental profile.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExperimentalBenchmark {
+
+    @Benchmark
+    public double threeOptMutate(Instance instance, Tours tours) throws Throwable {
+        return (double) Solver.THREE_OPT_MUTATE.invokeExact(tours.mutant, instance.distances, tours.random);
+    }
+
+    @Benchmark
+    public Object cleanCrossover(Instance instance, Tours tours) throws Throwable {
+        return Solver.CLEAN_CROSSOVER.invokeExact(instance.distances, instance.neighbours, tours.parentA,
+                tours.parentB, tours.random, tours.child);
+    }
+
+    @Benchmark
+    public Object orderCrossover(Tours tours) throws Throwable {
+        return Solver.ORDER_CROSSOVER.invokeExact(tours.parentA, tours.parentB, tours.random, tours.child);
+    }
+}
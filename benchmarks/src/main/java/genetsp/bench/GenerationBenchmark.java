@@ -0,0 +1,46 @@
+package genetsp.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One whole generation of TSP.evolve, with the default settings: ranking,
+ * breeding and mutating a population of a hundred.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GenerationBenchmark {
+
+    @Param({"50", "1000", "10000", "100000"})
+    public int size;
+
+    private Object tsp;
+
+    @Setup
+    public void setup() throws Throwable {
+        Object cities = Solver.randomCities(size, 42);
+        tsp = Solver.NEW_TSP.invokeExact(cities, (Object) Solver.NEW_RANDOM.invokeExact(42L));
+        Solver.INITIALISE.invokeExact(tsp);
+    }
+
+    @Benchmark
+    public Object evolve() throws Throwable {
+        Solver.EVOLVE.invokeExact(tsp);
+        return tsp;
+    }
+}
@@ -0,0 +1,54 @@
+package genetsp.bench;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A random instance shared by the threads of a benchmark: the cities, their
+ * distances and candidate lists, and a population of tours to draw parents
+ * and mutants from.
+ */
+@State(Scope.Benchmark)
+public class Instance {
+
+    /**
+     * How many tours the population holds, as in TSP.
+     */
+    static final int POPULATION = 100;
+
+    /**
+     * How many different nearest neighbour tours the population is made from.
+     */
+    private static final int STARTS = 8;
+
+    @Param({"50", "1000", "10000", "100000"})
+    public int size;
+
+    Object cities;
+    Object distances;
+    Object neighbours;
+
+    /**
+     * Chromosome[POPULATION], of differing costs.
+     */
+    Object[] population;
+
+    @Setup
+    public void setup() throws Throwable {
+        cities = Solver.randomCities(size, 42);
+        distances = Solver.NEW_DISTANCES.invokeExact(cities, 0);
+        neighbours = Solver.NEW_NEIGHBOURS.invokeExact(cities, 10);
+        Object random = Solver.NEW_RANDOM.invokeExact(42L);
+        population = Solver.chromosomes(POPULATION);
+        for (int i = 0; i < POPULATION; i++) {
+            population[i] = i < STARTS
+                    ? Solver.NEW_CHROMOSOME.invokeExact(distances, neighbours, random)
+                    : Solver.COPY_CHROMOSOME.invokeExact(population[i % STARTS]);
+            if (i >= STARTS) {
+                double delta = (double) Solver.INVERSION_MUTATE.invokeExact(population[i], distances, random);
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package genetsp.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The mutations, each applied over and over to the same tour, with the
+ * parameters TSP uses.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MutationBenchmark {
+
+    @Benchmark
+    public double inversionMutate(Instance instance, Tours tours) throws Throwable {
+        return (double) Solver.INVERSION_MUTATE.invokeExact(tours.mutant, instance.distances, tours.random);
+    }
+
+    @Benchmark
+    public double shuffleMutate(Instance instance, Tours tours) throws Throwable {
+        return (double) Solver.SHUFFLE_MUTATE.invokeExact(tours.mutant, instance.distances, 0.8, tours.random);
+    }
+
+    @Benchmark
+    public double greedyMutate(Instance instance, Tours tours) throws Throwable {
+        return (double) Solver.GREEDY_MUTATE.invokeExact(tours.mutant, instance.distances, instance.neighbours,
+                tours.random);
+    }
+
+    @Benchmark
+    public double translocationMutate(Instance instance, Tours tours) throws Throwable {
+        return (double) Solver.TRANSLOCATION_MUTATE.invokeExact(tours.mutant, instance.distances, tours.random);
+    }
+}
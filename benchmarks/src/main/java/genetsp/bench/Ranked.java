@@ -0,0 +1,13 @@
+package genetsp.bench;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A thread's own Chromosome[] to sort the population in.
+ */
+@State(Scope.Thread)
+public class Ranked {
+
+    final Object[] chromosomes = Solver.chromosomes(Instance.POPULATION);
+}
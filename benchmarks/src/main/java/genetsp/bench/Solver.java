@@ -0,0 +1,185 @@
+package genetsp.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+
+/**
+ * Access to the solver's classes. They live in the default package, which
+ * code in a named package (as JMH requires benchmarks to be) cannot name, so
+ * they are reached through method handles. The handles are static finals
+ * adapted to Object types, so invokeExact calls on them are inlined by the
+ * JIT and cost no more than direct calls.
+ */
+final class Solver {
+
+    static final Class<?> CITY = load("City");
+    static final Class<?> CHROMOSOME = load("Chromosome");
+    static final Class<?> DISTANCES = load("DistanceMatrix");
+    static final Class<?> NEIGHBOURS = load("CandidateLists");
+    static final Class<?> RANDOM = load("RandomSource");
+    static final Class<?> TSP = load("TSP");
+    static final Class<?> EAX = load("EdgeAssemblyCrossover");
+
+    /** (int x, int y) -> City */
+    static final MethodHandle NEW_CITY = constructor(CITY, int.class, int.class);
+
+    /** (long seed) -> RandomSource */
+    static final MethodHandle NEW_RANDOM = constructor(RANDOM, long.class);
+
+    /** (City[] cities, int epoch) -> DistanceMatrix */
+    static final MethodHandle NEW_DISTANCES = constructor(DISTANCES, cities(), int.class);
+
+    /** (City[] cities, int k) -> CandidateLists */
+    static final MethodHandle NEW_NEIGHBOURS = constructor(NEIGHBOURS, cities(), int.class);
+
+    /** (DistanceMatrix, CandidateLists, RandomSource) -> Chromosome, a nearest neighbour tour */
+    static final MethodHandle NEW_CHROMOSOME = constructor(CHROMOSOME, DISTANCES, NEIGHBOURS, RANDOM);
+
+    /** (Chromosome) -> Chromosome, a copy */
+    static final MethodHandle COPY_CHROMOSOME = constructor(CHROMOSOME, CHROMOSOME);
+
+    /** (City[] cities, RandomSource) -> TSP */
+    static final MethodHandle NEW_TSP = constructor(TSP, cities(), RANDOM);
+
+    /** (Chromosome, DistanceMatrix) -> void */
+    static final MethodHandle CALCULATE_COST = method(CHROMOSOME, "calculateCost", void.class, DISTANCES);
+
+    /** (Chromosome) -> double */
+    static final MethodHandle GET_COST = method(CHROMOSOME, "getCost", double.class);
+
+    /** (Chromosome, DistanceMatrix, RandomSource) -> double */
+    static final MethodHandle INVERSION_MUTATE = method(CHROMOSOME, "inversionMutate", double.class, DISTANCES, RANDOM);
+
+    /** (Chromosome, DistanceMatrix, double prob, RandomSource) -> double */
+    static final MethodHandle SHUFFLE_MUTATE = method(CHROMOSOME, "shuffleMutate", double.class, DISTANCES, double.class, RANDOM);
+
+    /** (Chromosome, DistanceMatrix, CandidateLists, RandomSource) -> double */
+    static final MethodHandle GREEDY_MUTATE = method(CHROMOSOME, "greedyMutate", double.class, DISTANCES, NEIGHBOURS, RANDOM);
+
+    /** (Chromosome, DistanceMatrix, RandomSource) -> double */
+    static final MethodHandle TRANSLOCATION_MUTATE = method(CHROMOSOME, "translocationMutate", double.class, DISTANCES, RANDOM);
+
+    /** (Chromosome, DistanceMatrix, RandomSource) -> double, ExperimentalChromosome only */
+    static final MethodHandle THREE_OPT_MUTATE = optionalMethod(CHROMOSOME, "threeOptMutate", double.class, DISTANCES, RANDOM);
+
+    /** (DistanceMatrix, Chromosome, Chromosome, Chromosome child) -> Chromosome */
+    static final MethodHandle SEQUENTIAL_CROSSOVER = method(CHROMOSOME, "sequentialCrossover", CHROMOSOME,
+            DISTANCES, CHROMOSOME, CHROMOSOME, CHROMOSOME);
+
+    /** (DistanceMatrix, CandidateLists, Chromosome, Chromosome, RandomSource, Chromosome child) -> Chromosome */
+    static final MethodHandle EAX_CROSSOVER = method(EAX, "crossover", CHROMOSOME,
+            DISTANCES, NEIGHBOURS, CHROMOSOME, CHROMOSOME, RANDOM, CHROMOSOME);
+
+    /** (DistanceMatrix, CandidateLists, Chromosome, Chromosome, RandomSource, Chromosome child) -> Chromosome, ExperimentalChromosome only */
+    static final MethodHandle CLEAN_CROSSOVER = optionalMethod(CHROMOSOME, "cleanCrossover", CHROMOSOME,
+            DISTANCES, NEIGHBOURS, CHROMOSOME, CHROMOSOME, RANDOM, CHROMOSOME);
+
+    /** (Chromosome, Chromosome, RandomSource, Chromosome child) -> Chromosome, ExperimentalChromosome only */
+    static final MethodHandle ORDER_CROSSOVER = optionalMethod(CHROMOSOME, "orderCrossover", CHROMOSOME,
+            CHROMOSOME, CHROMOSOME, RANDOM, CHROMOSOME);
+
+    /** (Chromosome[], int count) -> void */
+    static final MethodHandle SORT_CHROMOSOMES = method(CHROMOSOME, "sortChromosomes", void.class,
+            Array.newInstance(CHROMOSOME, 0).getClass(), int.class);
+
+    /** (TSP) -> void */
+    static final MethodHandle INITIALISE = method(TSP, "initialise", void.class);
+
+    /** (TSP) -> void */
+    static final MethodHandle EVOLVE = method(TSP, "evolve", void.class);
+
+    private Solver() {
+    }
+
+    /**
+     * Cities scattered uniformly at random, at the same density whatever
+     * their number.
+     *
+     * @param count How many cities.
+     * @param seed  The seed of the scatter.
+     * @return The cities, as a City[].
+     */
+    static Object randomCities(int count, long seed) throws Throwable {
+        java.util.Random random = new java.util.Random(seed);
+        int side = (int) Math.ceil(Math.sqrt(count) * 100);
+        Object cities = Array.newInstance(CITY, count);
+        for (int i = 0; i < count; i++) {
+            Array.set(cities, i, (Object) NEW_CITY.invokeExact(random.nextInt(side), random.nextInt(side)));
+        }
+        return cities;
+    }
+
+    /**
+     * @param count How many chromosomes.
+     * @return An empty Chromosome[].
+     */
+    static Object[] chromosomes(int count) {
+        return (Object[]) Array.newInstance(CHROMOSOME, count);
+    }
+
+    private static Class<?> cities() {
+        return Array.newInstance(CITY, 0).getClass();
+    }
+
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle constructor(Class<?> type, Class<?>... parameters) {
+        try {
+            Constructor<?> constructor = type.getDeclaredConstructor(parameters);
+            constructor.setAccessible(true);
+            return erase(MethodHandles.lookup().unreflectConstructor(constructor));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle method(Class<?> type, String name, Class<?> returns, Class<?>... parameters) {
+        MethodHandle handle = optionalMethod(type, name, returns, parameters);
+        if (handle == null) {
+            throw new ExceptionInInitializerError(type.getName() + "." + name + " is missing");
+        }
+        return handle;
+    }
+
+    private static MethodHandle optionalMethod(Class<?> type, String name, Class<?> returns, Class<?>... parameters) {
+        try {
+            Method method = type.getDeclaredMethod(name, parameters);
+            if (method.getReturnType() != returns) {
+                throw new ExceptionInInitializerError(type.getName() + "." + name + " returns " + method.getReturnType());
+            }
+            method.setAccessible(true);
+            return erase(MethodHandles.lookup().unreflect(method));
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Replace the solver's types in a handle's type with Object, leaving
+     * primitives and void alone, so callers here can invoke it exactly.
+     */
+    private static MethodHandle erase(MethodHandle handle) {
+        MethodType type = handle.type();
+        for (int i = 0; i < type.parameterCount(); i++) {
+            if (!type.parameterType(i).isPrimitive()) {
+                type = type.changeParameterType(i, Object.class);
+            }
+        }
+        if (!type.returnType().isPrimitive()) {
+            type = type.changeReturnType(Object.class);
+        }
+        return handle.asType(type);
+    }
+}
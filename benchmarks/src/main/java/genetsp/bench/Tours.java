@@ -0,0 +1,28 @@
+package genetsp.bench;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The tours one benchmark thread works on: a mutant, two parents and a child
+ * to breed into, with the thread's own random source.
+ */
+@State(Scope.Thread)
+public class Tours {
+
+    Object random;
+    Object mutant;
+    Object parentA;
+    Object parentB;
+    Object child;
+
+    @Setup
+    public void setup(Instance instance) throws Throwable {
+        random = Solver.NEW_RANDOM.invokeExact(7L);
+        mutant = Solver.COPY_CHROMOSOME.invokeExact(instance.population[0]);
+        parentA = Solver.COPY_CHROMOSOME.invokeExact(instance.population[1]);
+        parentB = Solver.COPY_CHROMOSOME.invokeExact(instance.population[2]);
+        child = Solver.COPY_CHROMOSOME.invokeExact(instance.population[3]);
+    }
+}
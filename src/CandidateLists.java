@@ -0,0 +1,214 @@
+/**
+ * For every city, the k cities closest to it, nearest first. The lists are
+ * built from a k-d tree over the city coordinates and let the neighbour
+ * seeking operators look at a handful of cities instead of all of them.
+ * Where the coordinates do not determine the distances, as for explicit
+ * TSPLIB matrices, the lists are built from the distances themselves.
+ */
+class CandidateLists {
+
+    /**
+     * How many neighbours each city keeps.
+     */
+    private final int k;
+
+    /**
+     * The neighbours of city i are at [i * k, (i + 1) * k).
+     */
+    private final int[] neighbours;
+
+    /**
+     * The positions the lists were last built for.
+     */
+    private final int[] xs;
+    private final int[] ys;
+
+    /**
+     * A spatial index over the positions, or null when the lists come from
+     * a distance matrix.
+     */
+    private KdTree tree;
+
+    /**
+     * Scratch space used while (re)building lists.
+     */
+    private final int[] found;
+    private final long[] foundDistances;
+    private final boolean[] moved;
+    private final boolean[] stale;
+
+    /**
+     * Build the candidate lists for the given cities.
+     *
+     * @param cities The cities.
+     * @param k      How many neighbours to keep per city.
+     */
+    CandidateLists(City[] cities, int k) {
+        this(cities.length, k);
+        int n = cities.length;
+        for (int i = 0; i < n; i++) {
+            xs[i] = cities[i].getx();
+            ys[i] = cities[i].gety();
+        }
+        tree = new KdTree(xs, ys);
+        for (int i = 0; i < n; i++) {
+            rebuildList(i);
+        }
+    }
+
+    /**
+     * Allocate the lists and scratch space, without building anything.
+     *
+     * @param n The number of cities.
+     * @param k How many neighbours to keep per city.
+     */
+    private CandidateLists(int n, int k) {
+        this.k = Math.max(0, Math.min(k, n - 1));
+        this.neighbours = new int[n * this.k];
+        this.xs = new int[n];
+        this.ys = new int[n];
+        this.found = new int[Math.max(n, 1)];
+        this.foundDistances = new long[Math.max(this.k, 1)];
+        this.moved = new boolean[n];
+        this.stale = new boolean[n];
+    }
+
+    /**
+     * Build the candidate lists from a distance matrix, scanning every row.
+     * No k-d tree is built, as the coordinates say nothing about the
+     * distances, and the lists are never refreshed, as the cities of such an
+     * instance do not move. For asymmetric matrices the lists hold the
+     * nearest cities to go to.
+     *
+     * @param distances The distances between the cities.
+     * @param k         How many neighbours to keep per city.
+     */
+    CandidateLists(DistanceMatrix distances, int k) {
+        this(distances.size(), k);
+        int n = distances.size();
+        if (this.k == 0) {
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            int base = i * this.k;
+            int count = 0;
+            for (int j = 0; j < n; j++) {
+                if (j == i) {
+                    continue;
+                }
+                long distance = distances.get(i, j);
+                if (count == this.k && distance >= foundDistances[count - 1]) {
+                    continue;
+                }
+                // Insert into the sorted list, dropping the furthest
+                int at = count < this.k ? count++ : count - 1;
+                while (at > 0 && foundDistances[at - 1] > distance) {
+                    foundDistances[at] = foundDistances[at - 1];
+                    neighbours[base + at] = neighbours[base + at - 1];
+                    at--;
+                }
+                foundDistances[at] = distance;
+                neighbours[base + at] = j;
+            }
+        }
+    }
+
+    /**
+     * Bring the lists up to date with new city positions. Only the lists that
+     * can have changed are rebuilt: those of cities that moved, those that
+     * contained a city that moved, and those that a moved city has now come
+     * closer to than their current k'th neighbour.
+     *
+     * @param cities The cities, in their new positions.
+     * @throws IllegalStateException If the lists come from a distance matrix.
+     */
+    void refresh(City[] cities) {
+        if (tree == null) {
+            throw new IllegalStateException("candidate lists built from a distance matrix cannot follow moving cities");
+        }
+        int n = xs.length;
+        int movedCount = 0;
+        for (int i = 0; i < n; i++) {
+            moved[i] = cities[i].getx() != xs[i] || cities[i].gety() != ys[i];
+            stale[i] = moved[i];
+            if (moved[i]) {
+                xs[i] = cities[i].getx();
+                ys[i] = cities[i].gety();
+                movedCount++;
+            }
+        }
+        if (movedCount == 0) {
+            return;
+        }
+        tree = new KdTree(xs, ys);
+        if (k == 0) {
+            return;
+        }
+
+        long radius = 0;
+        for (int i = 0; i < n; i++) {
+            for (int r = 0; r < k && !stale[i]; r++) {
+                stale[i] = moved[neighbours[i * k + r]];
+            }
+            if (!stale[i]) {
+                radius = Math.max(radius, distance(i, neighbours[i * k + k - 1]));
+            }
+        }
+        for (int m = 0; m < n; m++) {
+            if (!moved[m]) {
+                continue;
+            }
+            int count = tree.within(m, radius, found);
+            for (int j = 0; j < count; j++) {
+                int city = found[j];
+                if (!stale[city] && distance(city, m) < distance(city, neighbours[city * k + k - 1])) {
+                    stale[city] = true;
+                }
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            if (stale[i]) {
+                rebuildList(i);
+            }
+        }
+    }
+
+    private void rebuildList(int city) {
+        int count = tree.nearest(city, k, found, foundDistances);
+        System.arraycopy(found, 0, neighbours, city * k, count);
+    }
+
+    /**
+     * @return The squared distance between two cities.
+     */
+    private long distance(int a, int b) {
+        long xdiff = xs[a] - xs[b];
+        long ydiff = ys[a] - ys[b];
+        return xdiff * xdiff + ydiff * ydiff;
+    }
+
+    /**
+     * @return How many neighbours each city keeps.
+     */
+    int k() {
+        return k;
+    }
+
+    /**
+     * @param city The city.
+     * @param rank 0 for the nearest neighbour, 1 for the next, and so on.
+     * @return The rank'th nearest neighbour of the city.
+     */
+    int get(int city, int rank) {
+        return neighbours[city * k + rank];
+    }
+
+    /**
+     * @return A k-d tree over the current city positions, or null when the
+     *         lists come from a distance matrix, in which case the nearest
+     *         city has to be found from the distances.
+     */
+    KdTree getTree() {
+        return tree;
+    }
+}
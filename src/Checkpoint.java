@@ -0,0 +1,204 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The full state of a run after a generation, from which the run can be
+ * resumed exactly: the population's tours and costs, the run's random
+ * state, the generation, the city positions and their epoch, and the lowest
+ * cost so far.
+ *
+ * The file is little-endian: a 32 byte header holding the magic number
+ * "TSPK", the format version, the number of cities n, the population size
+ * p, the generation and the epoch, plus two reserved words; then the master
+ * seed, the two words of the random state and the lowest cost, as 64 bit
+ * values; then the n original x and y positions, the n current x and y
+ * positions, the p costs as doubles, and the p tours, n cities each, as 32
+ * bit ints. A file is written beside its destination and moved over it, so
+ * a crash while writing leaves the previous checkpoint intact.
+ */
+class Checkpoint {
+
+    /**
+     * "TSPK" read as a little-endian int.
+     */
+    private static final int MAGIC = 0x4B505354;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 32;
+
+    final int cityCount;
+    final int populationSize;
+
+    long seed;
+    int generation;
+    int epoch;
+    double lowestCost;
+    long[] random = new long[2];
+
+    /**
+     * The positions the cities move from, and where they are now.
+     */
+    final int[] originalXs;
+    final int[] originalYs;
+    final int[] xs;
+    final int[] ys;
+
+    final double[] costs;
+    final int[][] tours;
+
+    /**
+     * @param cityCount      The number of cities.
+     * @param populationSize The number of chromosomes.
+     */
+    Checkpoint(int cityCount, int populationSize) {
+        this.cityCount = cityCount;
+        this.populationSize = populationSize;
+        this.originalXs = new int[cityCount];
+        this.originalYs = new int[cityCount];
+        this.xs = new int[cityCount];
+        this.ys = new int[cityCount];
+        this.costs = new double[populationSize];
+        this.tours = new int[populationSize][cityCount];
+    }
+
+    /**
+     * @return The current city positions.
+     */
+    City[] cities() {
+        return cities(xs, ys);
+    }
+
+    /**
+     * @return The positions the cities move from.
+     */
+    City[] originalCities() {
+        return cities(originalXs, originalYs);
+    }
+
+    private static City[] cities(int[] xs, int[] ys) {
+        City[] cities = new City[xs.length];
+        for (int i = 0; i < cities.length; i++) {
+            cities[i] = new City(xs[i], ys[i]);
+        }
+        return cities;
+    }
+
+    /**
+     * Write the checkpoint, replacing the file only once it is complete.
+     *
+     * @param path   The file.
+     * @param buffer A little-endian buffer to write through.
+     * @throws IOException If the file cannot be written.
+     */
+    void write(Path path, ByteBuffer buffer) throws IOException {
+        Path partial = path.resolveSibling(path.getFileName() + ".partial");
+        buffer.clear();
+        try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(cityCount).putInt(populationSize)
+                    .putInt(generation).putInt(epoch).putInt(0).putInt(0);
+            buffer.putLong(seed).putLong(random[0]).putLong(random[1]).putDouble(lowestCost);
+            putInts(channel, buffer, originalXs);
+            putInts(channel, buffer, originalYs);
+            putInts(channel, buffer, xs);
+            putInts(channel, buffer, ys);
+            for (double cost : costs) {
+                if (buffer.remaining() < 8) {
+                    drain(channel, buffer);
+                }
+                buffer.putDouble(cost);
+            }
+            for (int[] tour : tours) {
+                putInts(channel, buffer, tour);
+            }
+            drain(channel, buffer);
+            channel.force(false);
+        }
+        try {
+            Files.move(partial, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(partial, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void putInts(FileChannel channel, ByteBuffer buffer, int[] values) throws IOException {
+        for (int from = 0; from < values.length; ) {
+            if (buffer.remaining() < 4) {
+                drain(channel, buffer);
+            }
+            int count = Math.min(buffer.remaining() / 4, values.length - from);
+            buffer.asIntBuffer().put(values, from, count);
+            buffer.position(buffer.position() + 4 * count);
+            from += count;
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Read a checkpoint.
+     *
+     * @param path The file.
+     * @return The checkpoint.
+     * @throws IOException If the file cannot be read, or is not a complete
+     *                     checkpoint.
+     */
+    static Checkpoint read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < HEADER_BYTES + 32 || length > Integer.MAX_VALUE) {
+                throw new IOException(path + " is not a checkpoint");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException(path + " is not a checkpoint");
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException(path + " has unsupported version " + buffer.getInt(4));
+            }
+            int cityCount = buffer.getInt(8);
+            int populationSize = buffer.getInt(12);
+            long expected = HEADER_BYTES + 32 + 16L * cityCount + 8L * populationSize
+                    + 4L * populationSize * cityCount;
+            if (cityCount <= 0 || populationSize <= 0 || length != expected) {
+                throw new IOException(path + " is truncated or damaged");
+            }
+            Checkpoint checkpoint = new Checkpoint(cityCount, populationSize);
+            checkpoint.generation = buffer.getInt(16);
+            checkpoint.epoch = buffer.getInt(20);
+            buffer.position(HEADER_BYTES);
+            checkpoint.seed = buffer.getLong();
+            checkpoint.random[0] = buffer.getLong();
+            checkpoint.random[1] = buffer.getLong();
+            checkpoint.lowestCost = buffer.getDouble();
+            IntBuffer ints = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            ints.get(checkpoint.originalXs).get(checkpoint.originalYs).get(checkpoint.xs).get(checkpoint.ys);
+            buffer.position(buffer.position() + 16 * cityCount);
+            for (int p = 0; p < populationSize; p++) {
+                checkpoint.costs[p] = buffer.getDouble();
+            }
+            ints = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            for (int[] tour : checkpoint.tours) {
+                ints.get(tour);
+            }
+            return checkpoint;
+        }
+    }
+}
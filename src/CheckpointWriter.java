@@ -0,0 +1,106 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes checkpoints of a run on a background thread.
+ *
+ * Two checkpoints are kept and reused. The run copies its state into
+ * whichever is free and hands it over, which costs one copy of the
+ * population; the writer thread does the rest. If the writer is still busy
+ * with both, the run skips that checkpoint rather than wait, and the next
+ * one catches up.
+ */
+class CheckpointWriter implements Closeable {
+
+    /**
+     * Queued by close() to stop the writer thread.
+     */
+    private static final Checkpoint END = new Checkpoint(0, 0);
+
+    private final Path path;
+    private final BlockingQueue<Checkpoint> free = new ArrayBlockingQueue<Checkpoint>(2);
+    private final BlockingQueue<Checkpoint> pending = new ArrayBlockingQueue<Checkpoint>(3);
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+    private final Thread writer;
+    private int skipped;
+    private boolean closed;
+
+    /**
+     * @param path           The checkpoint file, replaced by every checkpoint.
+     * @param cityCount      The number of cities of the run.
+     * @param populationSize The number of chromosomes of the run.
+     */
+    CheckpointWriter(Path path, int cityCount, int populationSize) {
+        this.path = path;
+        free.add(new Checkpoint(cityCount, populationSize));
+        free.add(new Checkpoint(cityCount, populationSize));
+        this.writer = new Thread(this::write, "checkpoint-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * @return A checkpoint to copy the run's state into, or null if both
+     *         are still being written. Never waits.
+     */
+    Checkpoint take() {
+        Checkpoint checkpoint = free.poll();
+        if (checkpoint == null) {
+            skipped++;
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Queue a filled checkpoint to be written.
+     *
+     * @param checkpoint A checkpoint from take().
+     */
+    void submit(Checkpoint checkpoint) {
+        pending.add(checkpoint);
+    }
+
+    private void write() {
+        try {
+            while (true) {
+                Checkpoint checkpoint = pending.take();
+                if (checkpoint == END) {
+                    return;
+                }
+                try {
+                    checkpoint.write(path, buffer);
+                } catch (IOException e) {
+                    System.out.println("Writing checkpoint " + path + " failed: " + e.getMessage());
+                }
+                free.add(checkpoint);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Finish writing the checkpoints already handed over.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            pending.put(END);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (skipped > 0) {
+            System.out.println(skipped + " checkpoints were skipped while the previous ones were written");
+        }
+    }
+}
@@ -1,69 +1,170 @@
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Random;
 
 class Chromosome {
 
     /**
-     * The list of cities, which are the genes of this chromosome.
+     * The tours of a population, n cities each, one after another. The tour
+     * of this chromosome, whose cities are its genes, is the slice of n
+     * cities from offset; a chromosome outside a population has an array to
+     * itself.
      */
-    public int[] cityList;
+    final int[] tours;
+    final int offset;
+    final int n;
 
     /**
-     * The cost of following the cityList order of this chromosome.
+     * The costs of the population's tours. The cost of following this
+     * chromosome's tour is costs[slot].
      */
-    public double cost;
+    private final double[] costs;
+    private final int slot;
 
     /**
-     * @param cities The order that this chromosome would visit the cities.
+     * The index of each city in the tour. It is copied along with the tour
+     * and kept up by the mutations; operators that rewrite the whole tour
+     * leave it to be rebuilt on the next lookup. An entry is trusted only
+     * while the tour agrees with it, which is enough as no city appears
+     * twice.
+     */
+    private int[] position;
+
+    /**
+     * Per-thread marks used by valid(), kept clear between checks.
+     */
+    private static final ThreadLocal<boolean[]> visited = ThreadLocal.withInitial(() -> new boolean[0]);
+
+    /**
+     * Build a nearest-neighbour tour from a random starting city. The next
+     * city is taken from the current city's candidate list when one of them
+     * is still unvisited, otherwise from a k-d tree search over the unvisited
+     * cities, or a scan of the distances where the candidate lists have no
+     * tree.
+     *
+     * @param distances  The distances between the cities.
+     * @param neighbours The candidate lists of the cities.
+     * @param generator  The random source.
      */
     
-    Chromosome(City[] cities) {
-        Random generator = new Random();
-        cityList = new int[cities.length];
+    Chromosome(DistanceMatrix distances, CandidateLists neighbours, RandomSource generator) {
+        this(new int[distances.size()]);
 
-        ArrayList<Integer> visitedCities = new ArrayList<Integer>();
-        int currentCity = generator.nextInt(cities.length);
-        visitedCities.add(currentCity);
-        cityList[0] = currentCity;
+        KdTree tree = neighbours.getTree();
+        KdTree.Subset unvisitedCities = tree != null ? tree.subset() : null;
+        boolean[] visitedCities = new boolean[n];
+        int currentCity = generator.nextInt(n);
         
-        for (int i = 1; i < cities.length; i++) {
-            int[] distances = cities[currentCity].proximity(cities);
-            int index = 0;
-            int min = 1000000;
-            for (int j = 1; j < distances.length; j++) {
-                if (distances[j] < min && !visitedCities.contains(j) && distances[j] != 0) {
-                    min = distances[j];
-                    index = j;
+        for (int i = 0; i < n; i++) {
+            if (i > 0) {
+                int index = -1;
+                for (int r = 0; r < neighbours.k(); r++) {
+                    int candidate = neighbours.get(currentCity, r);
+                    if (!visitedCities[candidate]) {
+                        index = candidate;
+                        break;
+                    }
                 }
+                if (index < 0) {
+                    index = unvisitedCities != null ? unvisitedCities.nearest(currentCity)
+                            : nearestUnvisited(distances, currentCity, visitedCities);
+                }
+                currentCity = index;
+            }
+            if (unvisitedCities != null) {
+                unvisitedCities.remove(currentCity);
             }
-            currentCity = index;
-            visitedCities.add(currentCity);
-            cityList[i] = currentCity;
+            visitedCities[currentCity] = true;
+            tours[offset + i] = currentCity;
         }
-        calculateCost(cities);
+        calculateCost(distances);
     }
     
+    /**
+     * @param distances The distances between the cities.
+     * @param city      A city.
+     * @param visited   Whether each city has been visited.
+     * @return The unvisited city nearest to go to from city.
+     */
+    private static int nearestUnvisited(DistanceMatrix distances, int city, boolean[] visited) {
+        int nearest = -1;
+        int nearestDistance = Integer.MAX_VALUE;
+        for (int j = 0; j < visited.length; j++) {
+            if (!visited[j] && distances.get(city, j) < nearestDistance) {
+                nearest = j;
+                nearestDistance = distances.get(city, j);
+            }
+        }
+        return nearest;
+    }
+
     Chromosome(Chromosome other) {
-        this.cityList = other.cityList.clone();
-        this.cost = other.cost;
+        this(new int[other.n]);
+        copyFrom(other);
     }
     
     Chromosome(int[] cityList) {
-        this.cityList = new int[cityList.length];
+        this(cityList.length, new int[cityList.length], new double[1], 0);
+    }
+
+    /**
+     * A chromosome whose tour and cost are kept in a population's arrays.
+     *
+     * @param n     The number of cities.
+     * @param tours The tours of the population, n cities each.
+     * @param costs The costs of the population's tours.
+     * @param slot  Which tour and cost are this chromosome's.
+     */
+    Chromosome(int n, int[] tours, double[] costs, int slot) {
+        this.n = n;
+        this.tours = tours;
+        this.offset = slot * n;
+        this.costs = costs;
+        this.slot = slot;
+    }
+
+    /**
+     * Overwrite this chromosome with a copy of another one, reusing this
+     * chromosome's slice of the tours.
+     *
+     * @param other The chromosome to copy.
+     */
+    void copyFrom(Chromosome other) {
+        System.arraycopy(other.tours, other.offset, this.tours, this.offset, this.n);
+        this.costs[this.slot] = other.getCost();
+        if (other.position != null) {
+            if (this.position == null || this.position.length != other.position.length) {
+                this.position = new int[other.position.length];
+            }
+            System.arraycopy(other.position, 0, this.position, 0, other.position.length);
+        }
     }
     
+    /**
+     * Check that a chromosome visits no city twice.
+     *
+     * @param chromosome The chromosome to check.
+     * @return Whether every city in its list is distinct.
+     */
     public static boolean valid(Chromosome chromosome) {
-        int[] cityList = chromosome.getCities().clone();
-        ArrayList<Integer> visitedCities = new ArrayList<Integer>();
-        for (int i = 0; i < cityList.length; i++) {
-            if (visitedCities.contains(cityList[i])) {
-                return false;
-            }
-            visitedCities.add(cityList[i]);
+        int[] tours = chromosome.tours;
+        int from = chromosome.offset;
+        int to = from + chromosome.n;
+        boolean[] visitedCities = visited.get();
+        if (visitedCities.length < chromosome.n) {
+            visitedCities = new boolean[chromosome.n];
+            visited.set(visitedCities);
+        }
+        int i = from;
+        while (i < to && !visitedCities[tours[i]]) {
+            visitedCities[tours[i]] = true;
+            i++;
+        }
+        boolean valid = i == to;
+        // Leave the marks clear for the next check
+        for (int j = from; j < i; j++) {
+            visitedCities[tours[j]] = false;
         }
         
-        return true;
+        return valid;
     }
     
     
@@ -71,16 +172,138 @@ class Chromosome {
     /**
      * Calculate the cost of the specified list of cities.
      *
-     * @param cities A list of cities.
+     * @param distances The distances between the cities.
      */
-    void calculateCost(City[] cities) {
-        this.cost = 0;
-        for (int i = 0; i < this.cityList.length - 1; i++) {
-            double dist = cities[this.cityList[i]].proximity(cities[this.cityList[i + 1]]);
-            this.cost += dist;
+    void calculateCost(DistanceMatrix distances) {
+        if (distances.isTimeDependent()) {
+            costs[slot] = distances.getTravelTimes().tourCost(distances, tours, offset, n);
+            return;
+        }
+        double cost = 0;
+        for (int i = offset; i < offset + n - 1; i++) {
+            double dist = distances.get(tours[i], tours[i + 1]);
+            cost += dist;
         }
 
-        this.cost += cities[this.cityList[0]].proximity(cities[this.cityList[this.cityList.length - 1]]); //Adding return home
+        cost += distances.get(tours[offset + n - 1], tours[offset]); //Adding return home
+        costs[slot] = cost;
+    }
+
+    /**
+     * @param city A city of the tour.
+     * @return The index of the city in the tour.
+     */
+    int positionOf(int city) {
+        if (position == null || position.length != n) {
+            position = new int[n];
+        }
+        int index = position[city];
+        if (tours[offset + index] != city) {
+            // The tour has changed since it was last indexed
+            for (int i = 0; i < n; i++) {
+                position[tours[offset + i]] = i;
+            }
+            index = position[city];
+        }
+        return index;
+    }
+
+    /**
+     * Put a city at an index of the tour, keeping the position index up.
+     *
+     * @param index The index in the tour.
+     * @param city  The city.
+     */
+    private void place(int index, int city) {
+        tours[offset + index] = city;
+        if (position != null) {
+            position[city] = index;
+        }
+    }
+
+    /**
+     * The cost of the edges that touch some cities, each edge counted once.
+     * Taken before and after those cities move, the difference patches the
+     * tour's cost without re-measuring the rest of it.
+     *
+     * @param distances The distances between the cities.
+     * @param moved     The cities.
+     * @param count     How many entries of moved are in use.
+     * @param isMoved   Whether each city is among them.
+     * @return The total cost of the edges.
+     */
+    double edgesTouching(DistanceMatrix distances, int[] moved, int count, boolean[] isMoved) {
+        double sum = 0;
+        for (int m = 0; m < count; m++) {
+            int city = moved[m];
+            int index = positionOf(city);
+            int next = tours[offset + (index + 1 == n ? 0 : index + 1)];
+            int previous = tours[offset + (index == 0 ? n - 1 : index - 1)];
+            sum += distances.get(city, next);
+            // An edge between two moved cities is counted from the first of them
+            if (!isMoved[previous]) {
+                sum += distances.get(previous, city);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Recompute the cost from scratch and compare it with the cost maintained
+     * incrementally by the mutation operators. This is a debug cross-check.
+     *
+     * @param distances The distances between the cities.
+     * @return Whether the maintained cost was correct.
+     */
+    boolean verifyCost(DistanceMatrix distances) {
+        double tracked = getCost();
+        calculateCost(distances);
+        return Math.abs(tracked - getCost()) < 1e-6;
+    }
+
+    /**
+     * @param distances The distances between the cities.
+     * @param index     A position in the tour.
+     * @return The length of the edge leaving the index'th city of the tour.
+     */
+    private double edgeCost(DistanceMatrix distances, int index) {
+        return distances.get(tours[offset + index], tours[offset + (index + 1) % n]);
+    }
+
+    /**
+     * @return The total length of the (at most four, distinct) edges touching
+     *         two positions of the tour.
+     */
+    private double swapEdgesCost(DistanceMatrix distances, int first, int second) {
+        int beforeFirst = (first + n - 1) % n;
+        int beforeSecond = (second + n - 1) % n;
+        double sum = edgeCost(distances, beforeFirst) + edgeCost(distances, first);
+        if (beforeSecond != first) {
+            sum += edgeCost(distances, beforeSecond);
+        }
+        if (second != beforeFirst) {
+            sum += edgeCost(distances, second);
+        }
+        return sum;
+    }
+
+    /**
+     * Swap the cities at two positions of the tour, updating the cost from
+     * the edges around the two positions only.
+     *
+     * @return The change in cost.
+     */
+    private double swap(DistanceMatrix distances, int first, int second) {
+        if (first == second) {
+            return 0;
+        }
+        double before = swapEdgesCost(distances, first, second);
+        int temp = tours[offset + first];
+        place(first, tours[offset + second]);
+        place(second, temp);
+        double delta = swapEdgesCost(distances, first, second) - before;
+        costs[slot] += delta;
+        return delta;
     }
 
     /**
@@ -88,7 +311,14 @@ class Chromosome {
      * must be traveled.
      */
     double getCost() {
-        return cost;
+        return costs[slot];
+    }
+
+    /**
+     * @param cost The cost of this chromosome's tour.
+     */
+    void setCost(double cost) {
+        costs[slot] = cost;
     }
 
     /**
@@ -96,14 +326,16 @@ class Chromosome {
      * @return The ith city.
      */
     int getCity(int i) {
-        return cityList[i];
+        return tours[offset + i];
     }
     
     /**
-     * @return the list representing the tour of this chromosome
+     * Copy the tour of this chromosome out.
+     *
+     * @param list Receives the cities in the order visited.
      */
-    int[] getCities() {
-        return cityList;
+    void copyCities(int[] list) {
+        System.arraycopy(tours, offset, list, 0, n);
     }
 
     /**
@@ -112,9 +344,7 @@ class Chromosome {
      * @param list A list of cities.
      */
     void setCities(int[] list) {
-        for (int i = 0; i < cityList.length; i++) {
-            cityList[i] = list[i];
-        }
+        System.arraycopy(list, 0, tours, offset, n);
     }
 
     /**
@@ -124,140 +354,155 @@ class Chromosome {
      * @param value The city number to place into the index.
      */
     void setCity(int index, int value) {
-        this.cityList[index] = value;
+        tours[offset + index] = value;
     }
 
     /**
-     * Sort the chromosomes by their cost.
+     * Sort the chromosomes by their cost. See Ranking.selectBest when only the
+     * cheapest few are needed.
      *
      * @param chromosomes An array of chromosomes to sort.
      * @param num         How much of the chromosome list to sort.
      */
     public static void sortChromosomes(Chromosome chromosomes[], int num) {
-        Chromosome ctemp;
-        boolean swapped = true;
-        while (swapped) {
-            swapped = false;
-            for (int i = 0; i < num - 1; i++) {
-                if (chromosomes[i].getCost() > chromosomes[i + 1].getCost()) {
-                    ctemp = chromosomes[i];
-                    chromosomes[i] = chromosomes[i + 1];
-                    chromosomes[i + 1] = ctemp;
-                    swapped = true;
-                }
-            }
-        }
+        Ranking.sort(chromosomes, num);
     }
     
     /**
-     * Swap a random point with the shortest possible mutation
+     * Swap a random point with the shortest possible mutation. The nearest
+     * neighbour comes from the candidate lists and its place in the tour from
+     * the position index, so while the tour is indexed this takes constant
+     * time.
      *
-     * @param list A list of cities.
+     * @param distances  The distances between the cities.
+     * @param neighbours The candidate lists of the cities.
+     * @param generator  The random source.
+     * @return The change in cost.
      */
-    public void greedyMutate(City[] cities) {
-        Random generator = new Random();
+    public double greedyMutate(DistanceMatrix distances, CandidateLists neighbours, RandomSource generator) {
         
-        int point = generator.nextInt(cityList.length);
-        int[] distances = cities[cityList[point]].proximity(cities);
-        int min  = 10000;
-        int city = 0;
-        for (int j = 0; j < distances.length; j++) {
-                if (distances[j] < min && distances[j] != 0) {
-                    min = distances[j];
-                    city = j;
-                }
-        }
-        int index = -1;
-        for (int i = 0; i < cityList.length; i++) {
-            if (cityList[i] == city) {
-                index = i;
-                break;
-            }
+        int point = generator.nextInt(n);
+        if (neighbours.k() == 0) {
+            return 0;
         }
+        int city = neighbours.get(tours[offset + point], 0);
         
-        int temp = this.getCity((point + 1)%cityList.length);
-        this.cityList[(point + 1)%cityList.length] =  cityList[index];
-        this.cityList[index] =  temp;
-        
+        return swap(distances, (point + 1)%n, positionOf(city));
     }
     
     /**
      * Randomly shuffle points in the city list with each other
      *
+     * @param distances The distances between the cities.
      * @param prob list the probability of shuffling 
+     * @param generator The random source.
+     * @return The change in cost.
      */
-    public void shuffleMutate(double prob) {
-        Random generator = new Random();
+    public double shuffleMutate(DistanceMatrix distances, double prob, RandomSource generator) {
+        double delta = 0;
         
-        for (int i = 0; i < cityList.length; i++) {
+        for (int i = 0; i < n; i++) {
             double p = generator.nextDouble();
             
             if (p < prob) {
-                int mutIndex = generator.nextInt(cityList.length);
-                int temp = this.cityList[i];
-                this.cityList[i] = this.cityList[mutIndex];
-                this.cityList[mutIndex] = temp;
+                int mutIndex = generator.nextInt(n);
+                delta += swap(distances, i, mutIndex);
             }
         }
+        return delta;
     }
     
     /**
      * Swap a random points in the list with a mirror point from the opposite end of the list. For example, in a list of length N, the i'th point will swap with the (n-i)'th point
+     * Only the two edges at the ends of the reversed segment change, so on
+     * symmetric instances the cost is updated in constant time.
      *
+     * @param distances The distances between the cities.
+     * @param generator The random source.
+     * @return The change in cost.
      */
-    public void inversionMutate() {
-        Random generator = new Random();
+    public double inversionMutate(DistanceMatrix distances, RandomSource generator) {
+        int startPoint = generator.nextInt(n - 1);
+        int endPoint = startPoint + generator.nextInt(n - startPoint - 1);
         
-        int startPoint = generator.nextInt(this.cityList.length - 1);
-        int endPoint = startPoint + generator.nextInt(this.cityList.length - startPoint - 1);
+        int before = tours[offset + (startPoint + n - 1) % n];
+        int after = tours[offset + (endPoint + 1) % n];
+        int start = tours[offset + startPoint];
+        int end = tours[offset + endPoint];
+        double delta = distances.get(before, end) + distances.get(start, after)
+                - distances.get(before, start) - distances.get(end, after);
         
         for (int i = 0; i <= Math.floor((endPoint - startPoint)/2); i++ ) {
             int temp = this.getCity(startPoint + i);
             int swap = this.getCity(endPoint - i);
-            this.cityList[startPoint + i] =  swap;
-            this.cityList[endPoint - i] =  temp;
+            place(startPoint + i, swap);
+            place(endPoint - i, temp);
         }
+        
+        if (!distances.isSymmetric()) {
+            double old = getCost();
+            calculateCost(distances);
+            return getCost() - old;
+        }
+        costs[slot] += delta;
+        return delta;
     }
     
     /**
      * Standard mutation. Randomly swap two points.
+     *
+     * @param distances The distances between the cities.
+     * @param generator The random source.
+     * @return The change in cost.
      */
-    public void transpositionMutate() {
-        Random generator = new Random();
+    public double transpositionMutate(DistanceMatrix distances, RandomSource generator) {
         
-        int firstPoint = generator.nextInt(this.cityList.length - 1);
-        int secondPoint = generator.nextInt(this.cityList.length - 1);
-        
-        int temp = this.getCity(secondPoint);
-        this.setCity(secondPoint, this.getCity(firstPoint));
-        this.setCity(firstPoint, temp);
+        int firstPoint = generator.nextInt(n - 1);
+        int secondPoint = generator.nextInt(n - 1);
         
+        return swap(distances, firstPoint, secondPoint);
     }
     
     /**
      * Similar to transpose mutate where two random points are swapped, however instead of a single point, a segment of the list of city traversals is 'cut and pasted' to a new location in the list
+     *
+     * @param distances The distances between the cities.
+     * @param generator The random source.
+     * @return The change in cost.
      */
-    public void translocationMutate() {
-        Random generator = new Random();
+    public double translocationMutate(DistanceMatrix distances, RandomSource generator) {
+        int chosenPoint = generator.nextInt(n - 1);
+        int insertionPoint = generator.nextInt(n - 1);
         
-        int chosenPoint = generator.nextInt(this.cityList.length - 1);
-        int insertionPoint = generator.nextInt(this.cityList.length - 1);
+        int temp = tours[offset + chosenPoint];
+        if (chosenPoint == insertionPoint) {
+            return 0;
+        }
         
-        int temp = cityList[chosenPoint];
+        // Unlink the chosen city, then link it in again next to the insertion point
+        int prev = tours[offset + (chosenPoint + n - 1) % n];
+        int next = tours[offset + (chosenPoint + 1) % n];
+        int left = tours[offset + (chosenPoint < insertionPoint ? insertionPoint : (insertionPoint + n - 1) % n)];
+        int right = tours[offset + (chosenPoint < insertionPoint ? (insertionPoint + 1) % n : insertionPoint)];
+        double delta = distances.get(prev, next) - distances.get(prev, temp) - distances.get(temp, next)
+                + distances.get(left, temp) + distances.get(temp, right) - distances.get(left, right);
         
         if (chosenPoint < insertionPoint) {
             for (int i = chosenPoint; i < insertionPoint; i++) {
-                cityList[i] = cityList[i+1];
+                place(i, tours[offset + i + 1]);
             }
             
-            cityList[insertionPoint] = temp;
+            place(insertionPoint, temp);
         } else {
             for (int i = chosenPoint; i > insertionPoint; i--) {
-                cityList[i] = cityList[i-1];
+                place(i, tours[offset + i - 1]);
             }
             
-            cityList[insertionPoint] = temp;
+            place(insertionPoint, temp);
         }
+        
+        costs[slot] += delta;
+        return delta;
     }
     
     
@@ -269,81 +514,59 @@ class Chromosome {
 	 * There is still a chance that this causes some repeated cities to be introduced, which will be pruned later when doing validation checks.
      *  TODO: need to fix tournament selection and this thingy; do elitsm and then the tournament
      */
-    public static Chromosome sequentialCrossover(City[] cities, Chromosome parent1, Chromosome parent2) {
-        int[] parentCities1 = parent1.getCities();
-        int[] parentCities2 = parent2.getCities();
-        
-        ArrayList<Integer> visitedCities = new ArrayList<Integer>();
+    public static Chromosome sequentialCrossover(DistanceMatrix distances, Chromosome parent1, Chromosome parent2) {
+        return sequentialCrossover(distances, parent1, parent2, new Chromosome(new int[parent1.n]));
+    }
 
-        Chromosome child = new Chromosome(parentCities1);
+    /**
+     * Sequential crossover into an existing chromosome, whose city list is
+     * overwritten. Its cost is not updated.
+     *
+     * From each parent the candidate is the last unplaced city at or after
+     * the current city's position, which is the parent's last unplaced city
+     * if that lies far enough along. Each parent keeps a pointer to its last
+     * unplaced city, and the fallback keeps one to the highest unplaced city
+     * number. The pointers only move backwards, so a crossover takes linear
+     * time.
+     *
+     * @return The child.
+     */
+    public static Chromosome sequentialCrossover(DistanceMatrix distances, Chromosome parent1, Chromosome parent2, Chromosome child) {
+        int[] parentCities1 = parent1.tours;
+        int[] parentCities2 = parent2.tours;
+        int[] childCities = child.tours;
+        int from1 = parent1.offset;
+        int from2 = parent2.offset;
+        int from = child.offset;
+        int n = distances.size();
         
-        child.setCity(0, parentCities1[0]);
-        visitedCities.add(parentCities1[0]);
-        int[] nextCities = {-1, -1};
+        CrossoverScratch scratch = CrossoverScratch.get(n);
+        int[] position1 = scratch.index(0, parent1);
+        int[] position2 = scratch.index(1, parent2);
+        int last1 = n - 1;
+        int last2 = n - 1;
+        int highest = n - 1;
         
-        for (int i = 0; i < cities.length - 1; i++) {
-            int currentCity = child.getCity(i);
-            boolean legitimate = false;
-            int currentPos = -1;
-            
-            for (int j = 0; j < cities.length; j++) {
-                if (parentCities1[j] == currentCity) {
-                    currentPos = j;
-                    break;
-                }
-            }
-            
-            for (int j = currentPos; j < cities.length; j++) {
-                if (! (visitedCities.contains(parentCities1[j])) ) {
-                    legitimate = true;
-                    nextCities[0] = parentCities1[j];
-                }
-            }
-            
-            if (! legitimate) {
-                for (int j = 0; j < cities.length; j++) {
-                    if (!(visitedCities.contains(j)) && !(currentCity == j)) {
-                        legitimate = true;
-                        nextCities[0] = j;
-                    }
-                }
-            }   
-            
-            currentCity = child.getCity(i);
-            legitimate = false;
-            currentPos = -1;
-            
-            for (int j = 0; j < cities.length; j++) {
-                if (parentCities2[j] == currentCity) {
-                    currentPos = j;
-                    break;
-                }
-            }
-            
-            for (int j = currentPos; j < cities.length; j++) {
-                if (! (visitedCities.contains(parentCities2[j])) ) {
-                    legitimate = true;
-                    nextCities[1] = parentCities2[j];
-                }
+        childCities[from] = parentCities1[from1];
+        scratch.place(parentCities1[from1]);
+        
+        for (int i = 0; i < n - 1; i++) {
+            int currentCity = childCities[from + i];
+            while (scratch.isPlaced(parentCities1[from1 + last1])) {
+                last1--;
             }
-            
-            if (! legitimate) {
-                for (int j = 0; j < cities.length; j++) {
-                    if (!(visitedCities.contains(j)) && !(currentCity == j)) {
-                        legitimate = true;
-                        nextCities[1] = j;
-                    }
-                }
+            while (scratch.isPlaced(parentCities2[from2 + last2])) {
+                last2--;
             }
-            
-            if (cities[nextCities[0]].proximity(cities[currentCity]) < cities[nextCities[1]].proximity(cities[currentCity])) {
-                child.setCity(i + 1, nextCities[0]);
-                visitedCities.add(nextCities[0]);
-            } else {
-                child.setCity(i + 1, nextCities[1]);
-                visitedCities.add(nextCities[1]);
+            while (scratch.isPlaced(highest)) {
+                highest--;
             }
+            int next1 = last1 > position1[currentCity] ? parentCities1[from1 + last1] : highest;
+            int next2 = last2 > position2[currentCity] ? parentCities2[from2 + last2] : highest;
             
+            int next = distances.get(next1, currentCity) < distances.get(next2, currentCity) ? next1 : next2;
+            childCities[from + i + 1] = next;
+            scratch.place(next);
         }
         
         return child;
@@ -0,0 +1,218 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A city instance in a compact binary format, memory-mapped rather than
+ * parsed.
+ *
+ * The file is little-endian: a 16 byte header holding the magic number
+ * "TSPC", the format version and the number of cities n, plus a reserved
+ * word; then the n x coordinates; then the n y coordinates, all as 32 bit
+ * ints. Opening a file maps it and checks the header, so coordinates are read
+ * straight from the page cache without parsing or objects per city.
+ *
+ * Run as a program to convert a text instance: java CityFile CityList.txt
+ * CityList.bin
+ */
+class CityFile {
+
+    /**
+     * "TSPC" read as a little-endian int.
+     */
+    private static final int MAGIC = 0x43505354;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 16;
+
+    private final int size;
+
+    /**
+     * Views of the mapped coordinate arrays.
+     */
+    private final IntBuffer xs;
+    private final IntBuffer ys;
+
+    private CityFile(MappedByteBuffer buffer, int size) {
+        this.size = size;
+        buffer.position(HEADER_BYTES);
+        this.xs = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        buffer.position(HEADER_BYTES + 4 * size);
+        this.ys = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+
+    /**
+     * Map a binary instance.
+     *
+     * @param path The file.
+     * @return The instance.
+     * @throws IOException If the file cannot be read, or is not a binary
+     *                     instance.
+     */
+    static CityFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < HEADER_BYTES || length > Integer.MAX_VALUE) {
+                throw new IOException(path + " is not a binary city file");
+            }
+            // The mapping stays valid once the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException(path + " is not a binary city file");
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException(path + " has unsupported version " + buffer.getInt(4));
+            }
+            int size = buffer.getInt(8);
+            if (size < 0 || length != HEADER_BYTES + 8L * size) {
+                throw new IOException(path + " is truncated or damaged: " + size + " cities in " + length + " bytes");
+            }
+            return new CityFile(buffer, size);
+        }
+    }
+
+    /**
+     * @param path A file.
+     * @return Whether the file starts like a binary instance.
+     * @throws IOException If the file cannot be read.
+     */
+    static boolean isBinary(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] head = new byte[4];
+            int read = 0;
+            while (read < head.length) {
+                int count = in.read(head, read, head.length - read);
+                if (count < 0) {
+                    return false;
+                }
+                read += count;
+            }
+            return ByteBuffer.wrap(head).order(ByteOrder.LITTLE_ENDIAN).getInt() == MAGIC;
+        }
+    }
+
+    /**
+     * @return The number of cities.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param i A city.
+     * @return The city's x position.
+     */
+    int x(int i) {
+        return xs.get(i);
+    }
+
+    /**
+     * @param i A city.
+     * @return The city's y position.
+     */
+    int y(int i) {
+        return ys.get(i);
+    }
+
+    /**
+     * @return The cities as objects, for the solver.
+     */
+    City[] toCities() {
+        City[] cities = new City[size];
+        for (int i = 0; i < size; i++) {
+            cities[i] = new City(xs.get(i), ys.get(i));
+        }
+        return cities;
+    }
+
+    /**
+     * Write cities as a binary instance.
+     *
+     * @param path The file to write, replaced if it exists.
+     * @param xs   The x positions.
+     * @param ys   The y positions.
+     * @param size The number of cities.
+     * @throws IOException If the file cannot be written.
+     */
+    static void write(Path path, int[] xs, int[] ys, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + 8 * size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(0);
+        buffer.asIntBuffer().put(xs, 0, size).put(ys, 0, size);
+        buffer.rewind();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Convert a text instance, one "x, y" line per city, to a binary one.
+     *
+     * @param text   The text instance.
+     * @param binary The binary instance to write.
+     * @return The number of cities converted.
+     * @throws IOException If a file cannot be read or written, or a line is
+     *                     malformed.
+     */
+    static int convert(Path text, Path binary) throws IOException {
+        int[] xs = new int[1024];
+        int[] ys = new int[1024];
+        int size = 0;
+        try (BufferedReader in = Files.newBufferedReader(text, StandardCharsets.UTF_8)) {
+            String line;
+            int number = 0;
+            while ((line = in.readLine()) != null) {
+                number++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                if (size == xs.length) {
+                    xs = Arrays.copyOf(xs, size * 2);
+                    ys = Arrays.copyOf(ys, size * 2);
+                }
+                int comma = line.indexOf(',');
+                try {
+                    if (comma < 0) {
+                        throw new NumberFormatException("no comma");
+                    }
+                    xs[size] = Integer.parseInt(line.substring(0, comma).trim());
+                    ys[size] = Integer.parseInt(line.substring(comma + 1).trim());
+                } catch (NumberFormatException e) {
+                    throw new IOException(text + " line " + number + ": expected \"x, y\" but found \"" + line + "\"");
+                }
+                size++;
+            }
+        }
+        write(binary, xs, ys, size);
+        return size;
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.out.println("Usage: java CityFile TEXT BINARY");
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            int size = convert(Paths.get(args[0]), Paths.get(args[1]));
+            System.out.println("Converted " + size + " cities in " + (System.nanoTime() - start) / 1000000 + " ms");
+        } catch (IOException e) {
+            System.out.println("Conversion failed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.Timer;
+
+/**
+ * The stats console of the GUI: the most recent lines printed, in a text
+ * area that is refreshed a few times a second.
+ *
+ * Lines go into a fixed ring buffer, so a long run neither grows the
+ * console without bound nor waits on the event dispatch thread to print.
+ */
+class ConsoleLog {
+
+    /**
+     * How many lines are kept.
+     */
+    private static final int capacity = 500;
+
+    /**
+     * How often the text area is brought up to date, in milliseconds.
+     */
+    private static final int refreshInterval = 100;
+
+    /**
+     * The lines, oldest at index next once the buffer has wrapped.
+     */
+    private final String[] lines = new String[capacity];
+    private int next;
+    private int count;
+
+    /**
+     * How many lines have been added, and how many the text area shows.
+     */
+    private long added;
+    private long shown;
+
+    private final JTextArea area;
+    private final JScrollPane pane;
+
+    /**
+     * @param rows    The height of the console, in lines.
+     * @param columns The width of the console, in characters.
+     */
+    ConsoleLog(int rows, int columns) {
+        this.area = new JTextArea(rows, columns);
+        this.area.setEditable(false);
+        this.pane = new JScrollPane(area);
+        Timer timer = new Timer(refreshInterval, e -> refresh());
+        timer.setCoalesce(true);
+        timer.start();
+    }
+
+    /**
+     * @return The component showing the console.
+     */
+    JScrollPane getComponent() {
+        return pane;
+    }
+
+    /**
+     * Add text to the console, a line per line break, plus a final line.
+     * Never waits for the display.
+     *
+     * @param text The text.
+     */
+    synchronized void append(String text) {
+        int start = 0;
+        while (true) {
+            int end = text.indexOf('\n', start);
+            lines[next] = end < 0 ? text.substring(start) : text.substring(start, end);
+            next = next + 1 == capacity ? 0 : next + 1;
+            count = Math.min(count + 1, capacity);
+            added++;
+            if (end < 0) {
+                return;
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Show the current lines, if any were added since the last refresh.
+     */
+    private void refresh() {
+        String text;
+        synchronized (this) {
+            if (added == shown) {
+                return;
+            }
+            shown = added;
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < count; i++) {
+                builder.append(lines[(next - count + i + capacity) % capacity]).append('\n');
+            }
+            text = builder.toString();
+        }
+        area.setText(text);
+        area.setCaretPosition(text.length());
+    }
+}
@@ -0,0 +1,131 @@
+import java.util.Arrays;
+
+/**
+ * Per-thread working memory for the crossover operators: a bitset of the
+ * cities placed in the child so far, the position of every city in each
+ * parent, and a list of child positions still to fill. The arrays grow to the
+ * largest instance seen and are reused from one crossover to the next, so a
+ * crossover allocates nothing and runs in linear time.
+ */
+class CrossoverScratch {
+
+    private static final ThreadLocal<CrossoverScratch> scratch = ThreadLocal.withInitial(CrossoverScratch::new);
+
+    /**
+     * One bit per city, set once the city is in the child.
+     */
+    private long[] placed = new long[0];
+
+    /**
+     * The index of each city in the first and second parent.
+     */
+    final int[][] positions = {new int[0], new int[0]};
+
+    /**
+     * Child positions that still need a city.
+     */
+    int[] pending = new int[0];
+
+    /**
+     * The unplaced cities as a k-d tree subset, built on first use by
+     * nearestUnplaced() and kept in step with place() after that.
+     */
+    private KdTree.Subset unplaced;
+    private KdTree unplacedTree;
+    private boolean unplacedCurrent;
+
+    private CrossoverScratch() {
+    }
+
+    /**
+     * @param n The number of cities.
+     * @return This thread's scratch space, sized for n cities, with no city
+     *         placed.
+     */
+    static CrossoverScratch get(int n) {
+        CrossoverScratch s = scratch.get();
+        int words = (n + 63) >>> 6;
+        if (s.placed.length < words) {
+            s.placed = new long[words];
+        } else {
+            Arrays.fill(s.placed, 0, words, 0L);
+        }
+        if (s.pending.length < n) {
+            s.positions[0] = new int[n];
+            s.positions[1] = new int[n];
+            s.pending = new int[n];
+        }
+        s.unplacedCurrent = false;
+        return s;
+    }
+
+    /**
+     * Record the index of every city of a parent.
+     *
+     * @param parent     Which position array to fill, 0 or 1.
+     * @param chromosome The parent.
+     * @return The position array.
+     */
+    int[] index(int parent, Chromosome chromosome) {
+        int[] position = positions[parent];
+        int[] tours = chromosome.tours;
+        for (int i = 0; i < chromosome.n; i++) {
+            position[tours[chromosome.offset + i]] = i;
+        }
+        return position;
+    }
+
+    /**
+     * @return Whether the city is already in the child.
+     */
+    boolean isPlaced(int city) {
+        return (placed[city >>> 6] & (1L << city)) != 0;
+    }
+
+    /**
+     * Mark a city as being in the child.
+     */
+    void place(int city) {
+        placed[city >>> 6] |= 1L << city;
+        if (unplacedCurrent) {
+            unplaced.remove(city);
+        }
+    }
+
+    /**
+     * @param tree A k-d tree over the current city positions.
+     * @param city The city to search around.
+     * @return The nearest city not yet in the child, or -1 if there is none.
+     */
+    int nearestUnplaced(KdTree tree, int city) {
+        if (!unplacedCurrent) {
+            if (unplacedTree != tree) {
+                unplacedTree = tree;
+                unplaced = tree.subset();
+            }
+            unplaced.reset(placed);
+            unplacedCurrent = true;
+        }
+        return unplaced.nearest(city);
+    }
+
+    /**
+     * Find the nearest unplaced city by scanning the distances, for
+     * instances whose coordinates do not determine the distances.
+     *
+     * @param distances The distances between the cities.
+     * @param city      The city to go from.
+     * @return The nearest city not yet in the child, or -1 if there is none.
+     */
+    int nearestUnplaced(DistanceMatrix distances, int city) {
+        int nearest = -1;
+        int nearestDistance = Integer.MAX_VALUE;
+        for (int j = 0; j < distances.size(); j++) {
+            if (!isPlaced(j) && distances.get(city, j) < nearestDistance) {
+                nearest = j;
+                nearestDistance = distances.get(city, j);
+            }
+        }
+        return nearest;
+    }
+}
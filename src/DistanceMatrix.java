@@ -0,0 +1,349 @@
+/**
+ * Precomputed city-to-city distances, stored in a flat primitive array.
+ *
+ * Symmetric instances keep only the strict lower triangle, so city i and
+ * city j share the slot i * (i - 1) / 2 + j (for i > j); asymmetric ones keep
+ * the full matrix row by row. The matrix is built once per city configuration
+ * and tagged with the epoch it was built for, so it only has to be rebuilt
+ * when the cities actually move.
+ *
+ * Besides the cities' own distance (City.proximity), a matrix can hold the
+ * distances of a TSPLIB instance: computed from real coordinates with one of
+ * the TSPLIB metrics, or given explicitly. The cities of such an instance
+ * never move, so its matrix is never rebuilt or updated.
+ */
+class DistanceMatrix {
+
+    /**
+     * The TSPLIB distance functions over real coordinates.
+     */
+    enum Metric {
+        /**
+         * Euclidean distance rounded to the nearest integer.
+         */
+        EUC_2D {
+            @Override
+            int distance(double x1, double y1, double x2, double y2) {
+                double xdiff = x1 - x2;
+                double ydiff = y1 - y2;
+                return (int) (Math.sqrt(xdiff * xdiff + ydiff * ydiff) + 0.5);
+            }
+        },
+        /**
+         * Euclidean distance rounded up.
+         */
+        CEIL_2D {
+            @Override
+            int distance(double x1, double y1, double x2, double y2) {
+                double xdiff = x1 - x2;
+                double ydiff = y1 - y2;
+                return (int) Math.ceil(Math.sqrt(xdiff * xdiff + ydiff * ydiff));
+            }
+        },
+        /**
+         * The pseudo-Euclidean distance of the att instances.
+         */
+        ATT {
+            @Override
+            int distance(double x1, double y1, double x2, double y2) {
+                double xdiff = x1 - x2;
+                double ydiff = y1 - y2;
+                double r = Math.sqrt((xdiff * xdiff + ydiff * ydiff) / 10.0);
+                int t = (int) (r + 0.5);
+                return t < r ? t + 1 : t;
+            }
+        },
+        /**
+         * Great circle distance in kilometres between coordinates given as
+         * latitude and longitude in DDD.MM form.
+         */
+        GEO {
+            @Override
+            int distance(double x1, double y1, double x2, double y2) {
+                double latitude1 = radians(x1);
+                double longitude1 = radians(y1);
+                double latitude2 = radians(x2);
+                double longitude2 = radians(y2);
+                double q1 = Math.cos(longitude1 - longitude2);
+                double q2 = Math.cos(latitude1 - latitude2);
+                double q3 = Math.cos(latitude1 + latitude2);
+                return (int) (6378.388 * Math.acos(0.5 * ((1.0 + q1) * q2 - (1.0 - q1) * q3)) + 1.0);
+            }
+
+            private double radians(double coordinate) {
+                int degrees = (int) coordinate;
+                double minutes = coordinate - degrees;
+                return 3.141592 * (degrees + 5.0 * minutes / 3.0) / 180.0;
+            }
+        };
+
+        /**
+         * @return The distance between the points (x1, y1) and (x2, y2).
+         */
+        abstract int distance(double x1, double y1, double x2, double y2);
+
+        /**
+         * @return Whether nearer points in the plane are never further apart
+         *         under this metric, so a k-d tree finds near cities.
+         */
+        boolean isPlanar() {
+            return this != GEO;
+        }
+    }
+
+    /**
+     * Instances larger than this are not tabulated (the triangle alone would
+     * need several hundred megabytes) and distances are computed on demand.
+     */
+    static final int MAX_TABULATED = 12000;
+
+    /**
+     * The number of cities.
+     */
+    private final int size;
+
+    /**
+     * Whether d(i, j) == d(j, i), which allows triangular storage.
+     */
+    private final boolean symmetric;
+
+    /**
+     * The distances, or null when they are computed on demand.
+     */
+    private final int[] weights;
+
+    /**
+     * City coordinates, kept for instances that are too large to tabulate.
+     */
+    private final int[] xs;
+    private final int[] ys;
+
+    /**
+     * The metric and real coordinates of a TSPLIB instance that is too large
+     * to tabulate, or null.
+     */
+    private final Metric metric;
+    private final double[] realXs;
+    private final double[] realYs;
+
+    /**
+     * The city configuration this matrix was built for.
+     */
+    private int epoch;
+
+    /**
+     * The time-dependent costs over these distances, or null when a tour
+     * costs the sum of its edges' distances.
+     */
+    private TravelTimes travelTimes;
+
+    /**
+     * Build the distances between the given cities.
+     *
+     * @param cities The cities.
+     * @param epoch  The city configuration the cities belong to.
+     */
+    DistanceMatrix(City[] cities, int epoch) {
+        this.size = cities.length;
+        this.symmetric = true;
+        if (size <= MAX_TABULATED) {
+            this.weights = new int[size * (size - 1) / 2];
+            this.xs = null;
+            this.ys = null;
+        } else {
+            this.weights = null;
+            this.xs = new int[size];
+            this.ys = new int[size];
+        }
+        this.metric = null;
+        this.realXs = null;
+        this.realYs = null;
+        rebuild(cities, epoch);
+    }
+
+    /**
+     * Hold distances that were computed elsewhere, such as the explicit
+     * weights of a TSPLIB instance.
+     *
+     * @param size      The number of cities.
+     * @param symmetric Whether weights is the strict lower triangle of a
+     *                  symmetric matrix, rather than the full matrix.
+     * @param weights   The distances, laid out as described for the class.
+     */
+    DistanceMatrix(int size, boolean symmetric, int[] weights) {
+        this.size = size;
+        this.symmetric = symmetric;
+        this.weights = weights;
+        this.xs = null;
+        this.ys = null;
+        this.metric = null;
+        this.realXs = null;
+        this.realYs = null;
+    }
+
+    /**
+     * Build the distances between points under a TSPLIB metric. Instances
+     * too large to tabulate compute them on demand.
+     *
+     * @param metric The metric.
+     * @param xs     The x coordinates.
+     * @param ys     The y coordinates.
+     */
+    DistanceMatrix(Metric metric, double[] xs, double[] ys) {
+        this.size = xs.length;
+        this.symmetric = true;
+        this.xs = null;
+        this.ys = null;
+        if (size <= MAX_TABULATED) {
+            this.weights = new int[size * (size - 1) / 2];
+            this.metric = null;
+            this.realXs = null;
+            this.realYs = null;
+            int k = 0;
+            for (int i = 1; i < size; i++) {
+                for (int j = 0; j < i; j++) {
+                    weights[k++] = metric.distance(xs[i], ys[i], xs[j], ys[j]);
+                }
+            }
+        } else {
+            this.weights = null;
+            this.metric = metric;
+            this.realXs = xs;
+            this.realYs = ys;
+        }
+    }
+
+    /**
+     * Recompute the distances for a new city configuration, reusing the
+     * existing storage.
+     *
+     * @param cities The cities, in their new positions.
+     * @param epoch  The city configuration the cities belong to.
+     */
+    void rebuild(City[] cities, int epoch) {
+        if (weights == null) {
+            for (int i = 0; i < size; i++) {
+                xs[i] = cities[i].getx();
+                ys[i] = cities[i].gety();
+            }
+        } else {
+            int k = 0;
+            for (int i = 1; i < size; i++) {
+                City city = cities[i];
+                for (int j = 0; j < i; j++) {
+                    weights[k++] = city.proximity(cities[j]);
+                }
+            }
+        }
+        this.epoch = epoch;
+    }
+
+    /**
+     * Bring the distances up to date when only some cities have moved, by
+     * recomputing the distances from those cities alone. If more than half
+     * the cities moved, the whole matrix is rebuilt instead.
+     *
+     * @param cities The cities, in their new positions.
+     * @param moved  The cities that moved.
+     * @param count  How many entries of moved are in use.
+     * @param epoch  The city configuration the cities belong to.
+     */
+    void update(City[] cities, int[] moved, int count, int epoch) {
+        if (count * 2 > size) {
+            rebuild(cities, epoch);
+            return;
+        }
+        for (int m = 0; m < count; m++) {
+            int i = moved[m];
+            City city = cities[i];
+            if (weights == null) {
+                xs[i] = city.getx();
+                ys[i] = city.gety();
+                continue;
+            }
+            int row = i * (i - 1) / 2;
+            for (int j = 0; j < i; j++) {
+                weights[row + j] = city.proximity(cities[j]);
+            }
+            for (int j = i + 1; j < size; j++) {
+                weights[j * (j - 1) / 2 + i] = city.proximity(cities[j]);
+            }
+        }
+        this.epoch = epoch;
+    }
+
+    /**
+     * Returns the distance between two cities.
+     *
+     * @param i The first city.
+     * @param j The second city.
+     * @return The distance from i to j.
+     */
+    int get(int i, int j) {
+        if (weights == null) {
+            if (metric != null) {
+                return metric.distance(realXs[i], realYs[i], realXs[j], realYs[j]);
+            }
+            int xdiff = xs[i] - xs[j];
+            int ydiff = ys[i] - ys[j];
+            return (int) Math.sqrt(xdiff * xdiff + ydiff * ydiff);
+        }
+        if (!symmetric) {
+            return weights[i * size + j];
+        }
+        if (i > j) {
+            return weights[i * (i - 1) / 2 + j];
+        } else if (i < j) {
+            return weights[j * (j - 1) / 2 + i];
+        }
+        return 0;
+    }
+
+    /**
+     * @return The number of cities.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return Whether the distance from i to j always equals the distance from
+     *         j to i. Time-dependent costs never are: the time an edge is
+     *         taken at depends on the direction the tour runs.
+     */
+    boolean isSymmetric() {
+        return symmetric && travelTimes == null;
+    }
+
+    /**
+     * Make tour costs time-dependent, or plain sums of distances again.
+     *
+     * @param travelTimes The time-dependent costs, or null.
+     */
+    void setTravelTimes(TravelTimes travelTimes) {
+        this.travelTimes = travelTimes;
+    }
+
+    /**
+     * @return Whether tour costs are time-dependent, in which case they are
+     *         not sums of independent edge costs, and must be computed by
+     *         walking the whole tour.
+     */
+    boolean isTimeDependent() {
+        return travelTimes != null;
+    }
+
+    /**
+     * @return The time-dependent costs, or null.
+     */
+    TravelTimes getTravelTimes() {
+        return travelTimes;
+    }
+
+    /**
+     * @return The city configuration this matrix was built for.
+     */
+    int getEpoch() {
+        return epoch;
+    }
+}
@@ -0,0 +1,459 @@
+import java.util.Arrays;
+
+/**
+ * Edge assembly crossover (EAX) after Nagata.
+ *
+ * The edges of the two parents that are not shared are split into AB-cycles,
+ * cycles that alternate between an edge of parent A and an edge of parent B.
+ * An E-set of AB-cycles is applied to parent A by removing its A edges and
+ * adding its B edges, which leaves a set of subtours. The subtours are then
+ * merged, smallest first, by the cheapest 2-opt join found among the
+ * candidate neighbours of the smaller subtour's cities.
+ *
+ * This is the single strategy: every E-set is one AB-cycle. Up to maxTrials
+ * of them are tried on the same pair of parents and the cheapest child is
+ * kept. Tours are held as adjacency arrays, each trial is undone from a log,
+ * and every array is reused, so a trial costs linear time and no allocation.
+ * Each thread has its own engine.
+ */
+class EdgeAssemblyCrossover {
+
+    /**
+     * How many AB-cycles are tried as E-sets per crossover.
+     */
+    private static final int maxTrials = 30;
+
+    private static final ThreadLocal<EdgeAssemblyCrossover> engines =
+            ThreadLocal.withInitial(EdgeAssemblyCrossover::new);
+
+    /**
+     * The two neighbours of each city in the tour being assembled, which
+     * starts out as parent A.
+     */
+    private int[] links = new int[0];
+
+    /**
+     * The two neighbours of each city in parent B.
+     */
+    private int[] linksB = new int[0];
+
+    /**
+     * The A and B edges at each city not yet used by an AB-cycle, or -1.
+     */
+    private int[] freeA = new int[0];
+    private int[] freeB = new int[0];
+
+    /**
+     * The walk that AB-cycles are cut from, and the position of each city on
+     * it, by parity of position, or -1.
+     */
+    private int[] path = new int[0];
+    private int[] pathAt = new int[0];
+
+    /**
+     * The cities of all AB-cycles, one after another, with the start of each
+     * cycle. Every cycle starts with an A edge.
+     */
+    private int[] cycleCities = new int[0];
+    private int[] cycleStart = new int[0];
+    private int cycleCount;
+
+    /**
+     * The AB-cycles in the order they are tried.
+     */
+    private int[] trialOrder = new int[0];
+
+    /**
+     * The log of changes to links made by the current trial.
+     */
+    private int[] undoSlot = new int[0];
+    private int[] undoValue = new int[0];
+    private int undoCount;
+
+    /**
+     * The subtour of each city, and the size and one city of each subtour.
+     */
+    private int[] label = new int[0];
+    private int[] subtourSize = new int[0];
+    private int[] subtourStart = new int[0];
+    private int subtourCount;
+
+    /**
+     * The cities of the subtour being merged.
+     */
+    private int[] members = new int[0];
+
+    private EdgeAssemblyCrossover() {
+    }
+
+    /**
+     * Cross two parents into an existing chromosome, whose city list and cost
+     * are overwritten. If the parents are the same tour the child is a copy
+     * of parent A.
+     *
+     * @param distances  The distances between the cities.
+     * @param neighbours The candidate lists of the cities.
+     * @param parentA    The parent the child is assembled from.
+     * @param parentB    The parent edges are taken from.
+     * @param generator  The random source.
+     * @param child      The chromosome to write the child into.
+     * @return The child.
+     */
+    static Chromosome crossover(DistanceMatrix distances, CandidateLists neighbours, Chromosome parentA,
+            Chromosome parentB, RandomSource generator, Chromosome child) {
+        EdgeAssemblyCrossover engine = engines.get();
+        engine.ensureCapacity(parentA.n);
+        engine.cross(distances, neighbours, parentA, parentB, generator, child);
+        return child;
+    }
+
+    private void ensureCapacity(int n) {
+        if (label.length >= n) {
+            return;
+        }
+        links = new int[2 * n];
+        linksB = new int[2 * n];
+        freeA = new int[2 * n];
+        freeB = new int[2 * n];
+        path = new int[2 * n + 1];
+        pathAt = new int[2 * n];
+        cycleCities = new int[2 * n];
+        cycleStart = new int[n + 1];
+        trialOrder = new int[n];
+        undoSlot = new int[8 * n];
+        undoValue = new int[8 * n];
+        label = new int[n];
+        subtourSize = new int[n];
+        subtourStart = new int[n];
+        members = new int[n];
+    }
+
+    private void cross(DistanceMatrix distances, CandidateLists neighbours, Chromosome parentA,
+            Chromosome parentB, RandomSource generator, Chromosome child) {
+        int n = parentA.n;
+        link(parentA, links);
+        link(parentB, linksB);
+        buildCycles(n, generator);
+        if (cycleCount == 0) {
+            child.copyFrom(parentA);
+            return;
+        }
+
+        // Try a random selection of the AB-cycles, each as a single E-set
+        int trials = Math.min(cycleCount, maxTrials);
+        for (int c = 0; c < cycleCount; c++) {
+            trialOrder[c] = c;
+        }
+        long bestDelta = Long.MAX_VALUE;
+        for (int t = 0; t < trials; t++) {
+            int pick = t + generator.nextInt(cycleCount - t);
+            int cycle = trialOrder[pick];
+            trialOrder[pick] = trialOrder[t];
+            trialOrder[t] = cycle;
+
+            undoCount = 0;
+            long delta = applyCycle(distances, cycle);
+            delta += mergeSubtours(distances, neighbours, n);
+            if (delta < bestDelta) {
+                bestDelta = delta;
+                writeTour(parentA.getCity(0), child);
+            }
+            undo();
+        }
+
+        if (distances.isSymmetric()) {
+            child.setCost(parentA.getCost() + bestDelta);
+        } else {
+            child.calculateCost(distances);
+        }
+    }
+
+    /**
+     * Fill an adjacency array from a tour.
+     */
+    private static void link(Chromosome chromosome, int[] adjacent) {
+        int[] tour = chromosome.tours;
+        int from = chromosome.offset;
+        int n = chromosome.n;
+        for (int i = 0; i < n; i++) {
+            int city = tour[from + i];
+            adjacent[2 * city] = tour[from + (i == 0 ? n - 1 : i - 1)];
+            adjacent[2 * city + 1] = tour[from + (i == n - 1 ? 0 : i + 1)];
+        }
+    }
+
+    /**
+     * Split the edges that are in one parent only into AB-cycles. A walk
+     * alternates between unused A and B edges; whenever it returns to a city
+     * at a position of the same parity, the stretch between is an AB-cycle,
+     * which is cut off, and the walk carries on from the earlier position.
+     */
+    private void buildCycles(int n, RandomSource generator) {
+        for (int city = 0; city < n; city++) {
+            for (int s = 0; s < 2; s++) {
+                int a = links[2 * city + s];
+                freeA[2 * city + s] = a == linksB[2 * city] || a == linksB[2 * city + 1] ? -1 : a;
+                int b = linksB[2 * city + s];
+                freeB[2 * city + s] = b == links[2 * city] || b == links[2 * city + 1] ? -1 : b;
+            }
+        }
+        Arrays.fill(pathAt, 0, 2 * n, -1);
+        cycleCount = 0;
+        cycleStart[0] = 0;
+
+        int offset = generator.nextInt(n);
+        for (int s = 0; s < n; s++) {
+            int start = (offset + s) % n;
+            if (freeA[2 * start] < 0 && freeA[2 * start + 1] < 0) {
+                continue;
+            }
+            path[0] = start;
+            pathAt[2 * start] = 0;
+            int m = 0;
+            while (true) {
+                int current = path[m];
+                int[] free = (m & 1) == 0 ? freeA : freeB;
+                int slot = 2 * current;
+                if (free[slot] < 0 || (free[slot + 1] >= 0 && generator.nextInt(2) == 1)) {
+                    slot++;
+                }
+                if (free[slot] < 0) {
+                    // Only the start can run out, once every cycle through it is cut
+                    break;
+                }
+                int next = free[slot];
+                free[slot] = -1;
+                free[free[2 * next] == current ? 2 * next : 2 * next + 1] = -1;
+
+                m++;
+                path[m] = next;
+                int at = 2 * next + (m & 1);
+                int j = pathAt[at];
+                if (j < 0) {
+                    pathAt[at] = m;
+                    continue;
+                }
+                // path[j..m] closes an AB-cycle; store it starting with an A edge
+                int length = m - j;
+                int begin = (j & 1) == 0 ? j : j + 1;
+                int end = cycleStart[cycleCount];
+                for (int t = 0; t < length; t++) {
+                    int position = begin + t;
+                    cycleCities[end + t] = path[position < m ? position : position - length];
+                }
+                cycleCount++;
+                cycleStart[cycleCount] = end + length;
+                for (int t = j + 1; t < m; t++) {
+                    pathAt[2 * path[t] + (t & 1)] = -1;
+                }
+                m = j;
+            }
+            pathAt[2 * start] = -1;
+        }
+    }
+
+    /**
+     * Apply one AB-cycle to the tour: remove its A edges and add its B edges.
+     *
+     * @return The change in tour length.
+     */
+    private long applyCycle(DistanceMatrix distances, int cycle) {
+        int from = cycleStart[cycle];
+        int length = cycleStart[cycle + 1] - from;
+        long delta = 0;
+        for (int e = 0; e < length; e += 2) {
+            int x = cycleCities[from + e];
+            int y = cycleCities[from + (e + 1) % length];
+            set(slotOf(x, y), -1);
+            set(slotOf(y, x), -1);
+            delta -= distances.get(x, y);
+        }
+        for (int e = 1; e < length; e += 2) {
+            int x = cycleCities[from + e];
+            int y = cycleCities[from + (e + 1) % length];
+            set(slotOf(x, -1), y);
+            set(slotOf(y, -1), x);
+            delta += distances.get(x, y);
+        }
+        return delta;
+    }
+
+    /**
+     * Join the subtours into a single tour, smallest subtour first. Each
+     * subtour is joined to another one by removing an edge (u, u') of it and
+     * an edge (v, v') of the other and adding (u, v) and (u', v'), where v is
+     * a candidate neighbour of u. If no city of the subtour has a candidate
+     * outside it, any other subtour's city is used.
+     *
+     * @return The change in tour length.
+     */
+    private long mergeSubtours(DistanceMatrix distances, CandidateLists neighbours, int n) {
+        int subtours = labelSubtours(n);
+        long delta = 0;
+        while (subtours > 1) {
+            int smallest = -1;
+            for (int s = 0; s < subtourCount; s++) {
+                if (subtourSize[s] > 0 && (smallest < 0 || subtourSize[s] < subtourSize[smallest])) {
+                    smallest = s;
+                }
+            }
+            int size = collect(smallest);
+
+            long best = Long.MAX_VALUE;
+            int bestU = -1, bestU2 = -1, bestV = -1, bestV2 = -1;
+            for (int i = 0; i < size; i++) {
+                int u = members[i];
+                for (int r = 0; r < neighbours.k(); r++) {
+                    int v = neighbours.get(u, r);
+                    if (label[v] == smallest) {
+                        continue;
+                    }
+                    for (int s = 0; s < 2; s++) {
+                        int u2 = links[2 * u + s];
+                        for (int t = 0; t < 2; t++) {
+                            int v2 = links[2 * v + t];
+                            long gain = (long) distances.get(u, v) + distances.get(u2, v2)
+                                    - distances.get(u, u2) - distances.get(v, v2);
+                            if (gain < best) {
+                                best = gain;
+                                bestU = u;
+                                bestU2 = u2;
+                                bestV = v;
+                                bestV2 = v2;
+                            }
+                        }
+                    }
+                }
+            }
+            if (bestU < 0) {
+                int u = members[0];
+                int u2 = links[2 * u];
+                for (int v = 0; v < n; v++) {
+                    if (label[v] == smallest) {
+                        continue;
+                    }
+                    for (int t = 0; t < 2; t++) {
+                        int v2 = links[2 * v + t];
+                        long gain = (long) distances.get(u, v) + distances.get(u2, v2)
+                                - distances.get(u, u2) - distances.get(v, v2);
+                        if (gain < best) {
+                            best = gain;
+                            bestU = u;
+                            bestU2 = u2;
+                            bestV = v;
+                            bestV2 = v2;
+                        }
+                    }
+                }
+            }
+
+            set(slotOf(bestU, bestU2), bestV);
+            set(slotOf(bestU2, bestU), bestV2);
+            set(slotOf(bestV, bestV2), bestU);
+            set(slotOf(bestV2, bestV), bestU2);
+            delta += best;
+
+            int into = label[bestV];
+            for (int i = 0; i < size; i++) {
+                label[members[i]] = into;
+            }
+            subtourSize[into] += size;
+            subtourSize[smallest] = 0;
+            subtours--;
+        }
+        return delta;
+    }
+
+    /**
+     * Label every city with the subtour it is on.
+     *
+     * @return The number of subtours.
+     */
+    private int labelSubtours(int n) {
+        Arrays.fill(label, 0, n, -1);
+        subtourCount = 0;
+        for (int start = 0; start < n; start++) {
+            if (label[start] >= 0) {
+                continue;
+            }
+            int size = 0;
+            int previous = links[2 * start + 1];
+            int city = start;
+            do {
+                label[city] = subtourCount;
+                size++;
+                int next = links[2 * city] == previous ? links[2 * city + 1] : links[2 * city];
+                previous = city;
+                city = next;
+            } while (city != start);
+            subtourStart[subtourCount] = start;
+            subtourSize[subtourCount] = size;
+            subtourCount++;
+        }
+        return subtourCount;
+    }
+
+    /**
+     * Copy the cities of a subtour into members.
+     *
+     * @return The size of the subtour.
+     */
+    private int collect(int subtour) {
+        int start = subtourStart[subtour];
+        int previous = links[2 * start + 1];
+        int city = start;
+        int size = 0;
+        do {
+            members[size++] = city;
+            int next = links[2 * city] == previous ? links[2 * city + 1] : links[2 * city];
+            previous = city;
+            city = next;
+        } while (city != start);
+        return size;
+    }
+
+    /**
+     * Write the assembled tour out into a chromosome's tour.
+     *
+     * @param start The city to start from.
+     * @param child The chromosome whose tour is overwritten.
+     */
+    private void writeTour(int start, Chromosome child) {
+        int[] tour = child.tours;
+        int previous = links[2 * start];
+        int city = start;
+        for (int i = child.offset; i < child.offset + child.n; i++) {
+            tour[i] = city;
+            int next = links[2 * city] == previous ? links[2 * city + 1] : links[2 * city];
+            previous = city;
+            city = next;
+        }
+    }
+
+    /**
+     * @return The index in links of the slot of city that holds neighbour.
+     */
+    private int slotOf(int city, int neighbour) {
+        return links[2 * city] == neighbour ? 2 * city : 2 * city + 1;
+    }
+
+    /**
+     * Overwrite a slot of links, logging the old value.
+     */
+    private void set(int slot, int value) {
+        undoSlot[undoCount] = slot;
+        undoValue[undoCount] = links[slot];
+        undoCount++;
+        links[slot] = value;
+    }
+
+    /**
+     * Restore links to parent A by replaying the log backwards.
+     */
+    private void undo() {
+        while (undoCount > 0) {
+            undoCount--;
+            links[undoSlot[undoCount]] = undoValue[undoCount];
+        }
+    }
+}
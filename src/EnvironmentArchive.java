@@ -0,0 +1,214 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded memory of the best tours found in earlier city configurations,
+ * for warm-starting the population when the cities move.
+ *
+ * MoveCities moves every city from its original position by one of five
+ * offsets (none, or one shift up, right, down or left), so a configuration
+ * is its vector of offset codes, and configurations that share most codes
+ * lie close together. Before the cities move, the best tours of the current
+ * configuration are remembered under a hash of its codes; after they have
+ * moved, the tours of the stored configurations nearest the new one, by
+ * Hamming distance over the codes, replace the worst chromosomes they beat.
+ * The least recently used configuration is forgotten once the archive is
+ * full, and its arrays are reused for the next one.
+ */
+class EnvironmentArchive {
+
+    /**
+     * How many of the best tours are remembered per configuration.
+     */
+    private static final int eliteCount = 5;
+
+    /**
+     * How many of the nearest configurations seed the population.
+     */
+    private static final int sourceCount = 2;
+
+    /**
+     * The tours remembered for one city configuration.
+     */
+    private static final class Environment {
+        final byte[] offsets;
+        final int[][] tours;
+
+        Environment(int cityCount) {
+            this.offsets = new byte[cityCount];
+            this.tours = new int[eliteCount][cityCount];
+        }
+    }
+
+    private final int capacity;
+
+    /**
+     * The configurations by hash, least recently remembered or recalled
+     * first.
+     */
+    private final LinkedHashMap<Long, Environment> environments;
+
+    /**
+     * The configuration last remembered, whose tours are the ones already in
+     * the population.
+     */
+    private Environment latest;
+
+    /**
+     * The offset codes of the configuration being remembered or recalled.
+     */
+    private final byte[] offsets;
+
+    /**
+     * The nearest configurations found by recall(), their keys and their
+     * distances.
+     */
+    private final Environment[] nearest = new Environment[sourceCount];
+    private final Long[] nearestKey = new Long[sourceCount];
+    private final int[] nearestDistance = new int[sourceCount];
+
+    /**
+     * Holds a remembered tour while it is priced.
+     */
+    private final Chromosome candidate;
+
+    /**
+     * @param capacity  How many configurations are kept.
+     * @param cityCount The number of cities.
+     */
+    EnvironmentArchive(int capacity, int cityCount) {
+        this.capacity = capacity;
+        this.environments = new LinkedHashMap<Long, Environment>(capacity * 2, 0.75f, true);
+        this.offsets = new byte[cityCount];
+        this.candidate = new Chromosome(new int[cityCount]);
+    }
+
+    /**
+     * Work out the offset code of every city: 0 where it has not moved, 1
+     * to 4 for the shifts of MoveCities, in its order.
+     *
+     * @param original The cities in their unmoved positions.
+     * @param cities   The cities in their current positions.
+     * @param codes    Receives the code of every city.
+     * @return A hash of the codes.
+     */
+    private static long encode(City[] original, City[] cities, byte[] codes) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < codes.length; i++) {
+            int dx = cities[i].getx() - original[i].getx();
+            int dy = cities[i].gety() - original[i].gety();
+            byte code = (byte) (dy > 0 ? 1 : dx > 0 ? 2 : dy < 0 ? 3 : dx < 0 ? 4 : 0);
+            codes[i] = code;
+            hash = (hash ^ code) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Remember the best tours of the current configuration, before the
+     * cities move. Moves the best chromosomes to the front of the population.
+     *
+     * @param original    The cities in their unmoved positions.
+     * @param cities      The cities in their current positions.
+     * @param chromosomes The population.
+     */
+    void remember(City[] original, City[] cities, Chromosome[] chromosomes) {
+        Long key = encode(original, cities, offsets);
+        Environment environment = environments.remove(key);
+        if (environment == null && environments.size() >= capacity) {
+            Iterator<Environment> eldest = environments.values().iterator();
+            environment = eldest.next();
+            eldest.remove();
+        }
+        if (environment == null) {
+            environment = new Environment(offsets.length);
+        }
+        environments.put(key, environment);
+        System.arraycopy(offsets, 0, environment.offsets, 0, offsets.length);
+
+        int count = Math.min(eliteCount, chromosomes.length);
+        Ranking.selectBest(chromosomes, chromosomes.length, count);
+        for (int e = 0; e < eliteCount; e++) {
+            chromosomes[Math.min(e, count - 1)].copyCities(environment.tours[e]);
+        }
+        latest = environment;
+    }
+
+    /**
+     * Seed the population from the configurations nearest the current one,
+     * after the cities have moved and the population has been re-evaluated.
+     * Each remembered tour replaces the worst chromosome not yet replaced, if
+     * it is cheaper and not the tour seeded just before. Sorts the
+     * population.
+     *
+     * @param original    The cities in their unmoved positions.
+     * @param cities      The cities in their new positions.
+     * @param distances   The distances between the cities, up to date.
+     * @param chromosomes The population.
+     * @return How many chromosomes were replaced.
+     */
+    int recall(City[] original, City[] cities, DistanceMatrix distances, Chromosome[] chromosomes) {
+        encode(original, cities, offsets);
+        Arrays.fill(nearest, null);
+        Arrays.fill(nearestDistance, Integer.MAX_VALUE);
+        for (Map.Entry<Long, Environment> entry : environments.entrySet()) {
+            Environment environment = entry.getValue();
+            if (environment == latest) {
+                continue;
+            }
+            int distance = distance(environment.offsets, nearestDistance[sourceCount - 1]);
+            int rank = sourceCount;
+            while (rank > 0 && distance < nearestDistance[rank - 1]) {
+                rank--;
+            }
+            if (rank == sourceCount) {
+                continue;
+            }
+            System.arraycopy(nearest, rank, nearest, rank + 1, sourceCount - rank - 1);
+            System.arraycopy(nearestKey, rank, nearestKey, rank + 1, sourceCount - rank - 1);
+            System.arraycopy(nearestDistance, rank, nearestDistance, rank + 1, sourceCount - rank - 1);
+            nearest[rank] = environment;
+            nearestKey[rank] = entry.getKey();
+            nearestDistance[rank] = distance;
+        }
+        if (nearest[0] == null) {
+            return 0;
+        }
+
+        Chromosome.sortChromosomes(chromosomes, chromosomes.length);
+        int slot = chromosomes.length - 1;
+        double seeded = -1;
+        for (int s = 0; s < sourceCount && nearest[s] != null; s++) {
+            // Counts as a use, for the eviction order
+            environments.get(nearestKey[s]);
+            for (int[] tour : nearest[s].tours) {
+                candidate.setCities(tour);
+                candidate.calculateCost(distances);
+                // A converged population remembers the same tour several times over
+                if (slot > 0 && candidate.getCost() != seeded && candidate.getCost() < chromosomes[slot].getCost()) {
+                    chromosomes[slot--].copyFrom(candidate);
+                    seeded = candidate.getCost();
+                }
+            }
+        }
+        return chromosomes.length - 1 - slot;
+    }
+
+    /**
+     * @param codes The offset codes of a stored configuration.
+     * @param limit A distance beyond which the exact value does not matter.
+     * @return The number of cities whose code differs from the current
+     *         configuration's, or a value of at least limit.
+     */
+    private int distance(byte[] codes, int limit) {
+        int distance = 0;
+        for (int i = 0; i < codes.length && distance < limit; i++) {
+            if (codes[i] != offsets[i]) {
+                distance++;
+            }
+        }
+        return distance;
+    }
+}
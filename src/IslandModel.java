@@ -0,0 +1,207 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Island model: several populations evolve side by side, each on its own
+ * thread with the usual evolve() step. All islands share one set of moving
+ * cities, and every few generations each island sends a copy of its best
+ * tour to its neighbours, where it replaces a worse chromosome.
+ */
+class IslandModel {
+
+    /**
+     * Which islands receive an island's best tour.
+     */
+    enum Topology {
+        /**
+         * Each island sends to the next one, in a cycle.
+         */
+        RING,
+        /**
+         * Each island sends to every other island.
+         */
+        FULL
+    }
+
+    /**
+     * The islands. The first one owns the shared city state and moves it.
+     */
+    private final TSP[] islands;
+
+    private final Topology topology;
+
+    /**
+     * How many generations pass between migrations.
+     */
+    private final int migrationInterval;
+
+    /**
+     * The migrants posted by the islands: slot (round % 2) * islands + i holds
+     * the best tour of island i. Alternating between two halves means an
+     * island that is still reading one round's migrants never sees the next
+     * round's posts.
+     */
+    private final AtomicReferenceArray<Chromosome> outbox;
+
+    /**
+     * Holds the islands while the first island moves the cities.
+     */
+    private final CyclicBarrier moveBarrier;
+
+    /**
+     * Holds the islands until every island has posted its migrant.
+     */
+    private final CyclicBarrier migrationBarrier;
+
+    /**
+     * Whether to report the best cost at every migration.
+     */
+    private boolean verbose;
+
+    /**
+     * @param cities            The cities in their unmoved positions.
+     * @param random            The random source of the run; each island gets
+     *                          a stream split from it.
+     * @param run               The run, numbered from 1, for the results log.
+     * @param islandCount       How many populations to evolve.
+     * @param migrationInterval How many generations pass between migrations.
+     * @param topology          Which islands exchange tours.
+     */
+    IslandModel(City[] cities, RandomSource random, int run, int islandCount, int migrationInterval, Topology topology) {
+        this.topology = topology;
+        this.migrationInterval = migrationInterval;
+        this.islands = new TSP[islandCount];
+        islands[0] = new TSP(cities, random.split());
+        for (int i = 1; i < islandCount; i++) {
+            islands[i] = new TSP(islands[0], random.split());
+        }
+        for (int i = 0; i < islandCount; i++) {
+            islands[i].identify(run, i);
+        }
+        this.outbox = new AtomicReferenceArray<Chromosome>(2 * islandCount);
+        this.moveBarrier = new CyclicBarrier(islandCount, () -> islands[0].moveCities());
+        this.migrationBarrier = new CyclicBarrier(islandCount, () -> report());
+    }
+
+    /**
+     * Evolve every island for the configured number of generations.
+     *
+     * @param verbose Whether to report the best cost at every migration.
+     * @return The lowest cost found by any island.
+     */
+    double run(boolean verbose) throws InterruptedException, ExecutionException {
+        this.verbose = verbose;
+        // Every island must have its own thread, or the barriers would never trip
+        ExecutorService pool = Executors.newFixedThreadPool(islands.length);
+        try {
+            List<Future<Double>> futures = new ArrayList<Future<Double>>();
+            for (int i = 0; i < islands.length; i++) {
+                final int index = i;
+                futures.add(pool.submit(() -> evolveIsland(index)));
+            }
+
+            double best = 0;
+            for (Future<Double> future : futures) {
+                double genMin = future.get();
+                if (genMin < best || best == 0) {
+                    best = genMin;
+                }
+            }
+            return best;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * The generation loop of one island. It mirrors TSP.run, except that the
+     * cities are moved once for all islands and migrants are exchanged.
+     */
+    private double evolveIsland(int index) throws InterruptedException, BrokenBarrierException {
+        TSP island = islands[index];
+        island.initialise();
+        int round = 0;
+        try {
+            while (island.generation < TSP.generations) {
+                island.evolve();
+                if (island.generation % TSP.cityMoveInterval == 0) {
+                    moveBarrier.await();
+                    if (index != 0) {
+                        island.adopt(islands[0]);
+                    }
+                }
+                island.generation++;
+
+                if (island.generation % migrationInterval == 0) {
+                    migrate(index, round++);
+                }
+                island.record();
+            }
+        } catch (RuntimeException e) {
+            // Release the other islands rather than leaving them waiting forever
+            moveBarrier.reset();
+            migrationBarrier.reset();
+            throw e;
+        }
+        return island.getGenMin();
+    }
+
+    /**
+     * Post a copy of the island's best tour, wait for every island to do the
+     * same, then let the migrants from the island's sources replace its worst
+     * chromosomes when they are better.
+     */
+    private void migrate(int index, int round) throws InterruptedException, BrokenBarrierException {
+        TSP island = islands[index];
+        Chromosome[] chromosomes = island.chromosomes;
+        int n = islands.length;
+        int half = (round % 2) * n;
+
+        Chromosome.sortChromosomes(chromosomes, TSP.populationSize);
+        // A slot is only rewritten two rounds later, once every reader is done with it
+        Chromosome post = outbox.get(half + index);
+        if (post == null) {
+            post = new Chromosome(chromosomes[0]);
+        } else {
+            post.copyFrom(chromosomes[0]);
+        }
+        outbox.set(half + index, post);
+        migrationBarrier.await();
+
+        int slot = TSP.populationSize - 1;
+        for (int source = 0; source < n && slot > 0; source++) {
+            if (source == index || (topology == Topology.RING && source != (index + n - 1) % n)) {
+                continue;
+            }
+            Chromosome migrant = outbox.get(half + source);
+            if (migrant.getCost() < chromosomes[slot].getCost()) {
+                chromosomes[slot--].copyFrom(migrant);
+            }
+        }
+    }
+
+    /**
+     * Print the best posted tour once every island has posted.
+     */
+    private void report() {
+        if (!verbose) {
+            return;
+        }
+        int half = (islands[0].generation / migrationInterval - 1) % 2 * islands.length;
+        double best = 0;
+        for (int i = 0; i < islands.length; i++) {
+            double cost = outbox.get(half + i).getCost();
+            if (cost < best || best == 0) {
+                best = cost;
+            }
+        }
+        System.out.println("Gen: " + islands[0].generation + " Cost: " + (int) best);
+    }
+}
@@ -0,0 +1,392 @@
+import java.util.Arrays;
+
+/**
+ * A static two dimensional k-d tree over city coordinates.
+ *
+ * The tree is stored implicitly: the cities of a subtree occupy a range
+ * [lo, hi) of the order array and the city at the middle of the range is
+ * the splitting point, so no node objects are allocated.
+ */
+class KdTree {
+
+    /**
+     * The coordinates of each city.
+     */
+    private final int[] xs;
+    private final int[] ys;
+
+    /**
+     * City numbers, arranged as an implicit tree.
+     */
+    private final int[] order;
+
+    /**
+     * Where each city ended up in the order array.
+     */
+    private final int[] position;
+
+    /**
+     * Whether the node at each middle index splits on x (otherwise on y).
+     */
+    private final boolean[] splitsOnX;
+
+    /**
+     * Build a tree over the given coordinates.
+     *
+     * @param xs The x coordinate of each city.
+     * @param ys The y coordinate of each city.
+     */
+    KdTree(int[] xs, int[] ys) {
+        this.xs = xs;
+        this.ys = ys;
+        int n = xs.length;
+        order = new int[n];
+        position = new int[n];
+        splitsOnX = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        build(0, n);
+        for (int i = 0; i < n; i++) {
+            position[order[i]] = i;
+        }
+    }
+
+    /**
+     * Arrange order[lo, hi) so that the middle city splits the range along
+     * the axis with the larger spread.
+     */
+    private void build(int lo, int hi) {
+        if (hi - lo <= 1) {
+            if (hi > lo) {
+                splitsOnX[lo] = true;
+            }
+            return;
+        }
+        int minx = Integer.MAX_VALUE, maxx = Integer.MIN_VALUE;
+        int miny = Integer.MAX_VALUE, maxy = Integer.MIN_VALUE;
+        for (int i = lo; i < hi; i++) {
+            int city = order[i];
+            minx = Math.min(minx, xs[city]);
+            maxx = Math.max(maxx, xs[city]);
+            miny = Math.min(miny, ys[city]);
+            maxy = Math.max(maxy, ys[city]);
+        }
+        boolean onX = (long) maxx - minx >= (long) maxy - miny;
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, onX ? xs : ys);
+        splitsOnX[mid] = onX;
+        build(lo, mid);
+        build(mid + 1, hi);
+    }
+
+    /**
+     * Quickselect: partially sort order[lo, hi] so that order[k] holds the
+     * city that would be there if the range was sorted by key.
+     */
+    private void select(int lo, int hi, int k, int[] key) {
+        while (hi > lo) {
+            int pivot = key[order[(lo + hi) >>> 1]];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (key[order[i]] < pivot) {
+                    i++;
+                }
+                while (key[order[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int temp = order[i];
+                    order[i] = order[j];
+                    order[j] = temp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return The squared distance between two cities.
+     */
+    private long distance(int a, int b) {
+        long xdiff = xs[a] - xs[b];
+        long ydiff = ys[a] - ys[b];
+        return xdiff * xdiff + ydiff * ydiff;
+    }
+
+    /**
+     * @return The signed distance from a city to the splitting line of a node.
+     */
+    private long offset(int city, int mid) {
+        int splitter = order[mid];
+        return splitsOnX[mid] ? (long) xs[city] - xs[splitter] : (long) ys[city] - ys[splitter];
+    }
+
+    /**
+     * Find the k cities nearest to a city, excluding the city itself.
+     *
+     * @param city      The city to search around.
+     * @param k         How many cities to find.
+     * @param out       Receives the cities, nearest first.
+     * @param distances Scratch space of at least k entries.
+     * @return How many cities were found.
+     */
+    int nearest(int city, int k, int[] out, long[] distances) {
+        int count = nearest(city, k, out, distances, 0, 0, order.length);
+        // The heap is a max-heap, so popping it yields the cities farthest first
+        for (int i = count - 1; i > 0; i--) {
+            int farthest = out[0];
+            long farthestDistance = distances[0];
+            out[0] = out[i];
+            distances[0] = distances[i];
+            siftDown(out, distances, 0, i);
+            out[i] = farthest;
+            distances[i] = farthestDistance;
+        }
+        return count;
+    }
+
+    private int nearest(int city, int k, int[] heap, long[] heapDistances, int count, int lo, int hi) {
+        if (hi <= lo) {
+            return count;
+        }
+        int mid = (lo + hi) >>> 1;
+        int candidate = order[mid];
+        if (candidate != city) {
+            long d = distance(city, candidate);
+            if (count < k) {
+                heap[count] = candidate;
+                heapDistances[count] = d;
+                siftUp(heap, heapDistances, count);
+                count++;
+            } else if (d < heapDistances[0]) {
+                heap[0] = candidate;
+                heapDistances[0] = d;
+                siftDown(heap, heapDistances, 0, count);
+            }
+        }
+        long offset = offset(city, mid);
+        boolean leftFirst = offset < 0;
+        count = nearest(city, k, heap, heapDistances, count, leftFirst ? lo : mid + 1, leftFirst ? mid : hi);
+        if (count < k || offset * offset < heapDistances[0]) {
+            count = nearest(city, k, heap, heapDistances, count, leftFirst ? mid + 1 : lo, leftFirst ? hi : mid);
+        }
+        return count;
+    }
+
+    private static void siftUp(int[] heap, long[] keys, int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (keys[parent] >= keys[i]) {
+                return;
+            }
+            swap(heap, keys, i, parent);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(int[] heap, long[] keys, int i, int count) {
+        while (true) {
+            int largest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < count && keys[left] > keys[largest]) {
+                largest = left;
+            }
+            if (right < count && keys[right] > keys[largest]) {
+                largest = right;
+            }
+            if (largest == i) {
+                return;
+            }
+            swap(heap, keys, i, largest);
+            i = largest;
+        }
+    }
+
+    private static void swap(int[] heap, long[] keys, int i, int j) {
+        int temp = heap[i];
+        heap[i] = heap[j];
+        heap[j] = temp;
+        long tempKey = keys[i];
+        keys[i] = keys[j];
+        keys[j] = tempKey;
+    }
+
+    /**
+     * Visit every city within a radius of a city (the city itself included).
+     *
+     * @param city    The centre of the search.
+     * @param radius2 The squared radius.
+     * @param out     Receives the cities found.
+     * @return How many cities were found.
+     */
+    int within(int city, long radius2, int[] out) {
+        return within(city, radius2, out, 0, 0, order.length);
+    }
+
+    private int within(int city, long radius2, int[] out, int count, int lo, int hi) {
+        if (hi <= lo) {
+            return count;
+        }
+        int mid = (lo + hi) >>> 1;
+        if (distance(city, order[mid]) <= radius2) {
+            out[count++] = order[mid];
+        }
+        long offset = offset(city, mid);
+        if (offset <= 0 || offset * offset <= radius2) {
+            count = within(city, radius2, out, count, lo, mid);
+        }
+        if (offset >= 0 || offset * offset <= radius2) {
+            count = within(city, radius2, out, count, mid + 1, hi);
+        }
+        return count;
+    }
+
+    /**
+     * @return A subset holding every city of the tree.
+     */
+    Subset subset() {
+        return new Subset();
+    }
+
+    /**
+     * A shrinking subset of the cities of the tree, supporting nearest
+     * remaining city queries. Each subtree keeps a count of the cities still
+     * in it, so searches skip exhausted subtrees. A subset belongs to a single
+     * thread; the tree itself can be shared.
+     */
+    class Subset {
+
+        /**
+         * Whether each city is still in the subset.
+         */
+        private final boolean[] contained;
+
+        /**
+         * How many cities are left in the subtree whose middle is each index.
+         */
+        private final int[] remaining;
+
+        /**
+         * The best city found by the current search, and its squared distance.
+         */
+        private int best;
+        private long bestDistance;
+
+        private Subset() {
+            contained = new boolean[order.length];
+            remaining = new int[order.length];
+            Arrays.fill(contained, true);
+            count(0, order.length);
+        }
+
+        private int count(int lo, int hi) {
+            if (hi <= lo) {
+                return 0;
+            }
+            int mid = (lo + hi) >>> 1;
+            remaining[mid] = hi - lo;
+            count(lo, mid);
+            count(mid + 1, hi);
+            return hi - lo;
+        }
+
+        /**
+         * Refill the subset with every city not marked in a bitset, reusing
+         * its arrays. Takes linear time.
+         *
+         * @param excluded A bitset over the cities; marked cities are left out.
+         */
+        void reset(long[] excluded) {
+            for (int city = 0; city < contained.length; city++) {
+                contained[city] = (excluded[city >>> 6] & (1L << city)) == 0;
+            }
+            recount(0, order.length);
+        }
+
+        private int recount(int lo, int hi) {
+            if (hi <= lo) {
+                return 0;
+            }
+            int mid = (lo + hi) >>> 1;
+            remaining[mid] = (contained[order[mid]] ? 1 : 0) + recount(lo, mid) + recount(mid + 1, hi);
+            return remaining[mid];
+        }
+
+        /**
+         * @return Whether the city is still in the subset.
+         */
+        boolean contains(int city) {
+            return contained[city];
+        }
+
+        /**
+         * Take a city out of the subset.
+         */
+        void remove(int city) {
+            if (!contained[city]) {
+                return;
+            }
+            contained[city] = false;
+            int target = position[city];
+            int lo = 0;
+            int hi = order.length;
+            while (true) {
+                int mid = (lo + hi) >>> 1;
+                remaining[mid]--;
+                if (target == mid) {
+                    return;
+                } else if (target < mid) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+            }
+        }
+
+        /**
+         * @param city The city to search around.
+         * @return The nearest city still in the subset, or -1 if it is empty.
+         */
+        int nearest(int city) {
+            best = -1;
+            bestDistance = Long.MAX_VALUE;
+            search(city, 0, order.length);
+            return best;
+        }
+
+        private void search(int city, int lo, int hi) {
+            if (hi <= lo) {
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            if (remaining[mid] == 0) {
+                return;
+            }
+            int candidate = order[mid];
+            if (contained[candidate]) {
+                long d = distance(city, candidate);
+                if (d < bestDistance) {
+                    best = candidate;
+                    bestDistance = d;
+                }
+            }
+            long offset = offset(city, mid);
+            boolean leftFirst = offset < 0;
+            search(city, leftFirst ? lo : mid + 1, leftFirst ? mid : hi);
+            if (offset * offset < bestDistance) {
+                search(city, leftFirst ? mid + 1 : lo, leftFirst ? hi : mid);
+            }
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/**
+ * Variable-depth Lin-Kernighan improvement over candidate neighbour lists.
+ *
+ * A move starts by removing the tour edge (t1, t2). Each step then adds an
+ * edge from the free end t2 to a candidate t3 and removes the edge from t3 to
+ * its predecessor t4, which on the array is a flip of the path t2..t4 and
+ * leaves t4 as the new free end. The steps form one sequential exchange; a
+ * step is only taken while the gain so far stays positive, no edge added by
+ * the move is removed again and no removed edge is added back. After every
+ * step the tour is closed with the edge (t4, t1), and the move is cut back to
+ * the step that gave the best closed tour. The first two levels try several
+ * candidates and backtrack; deeper levels take the best one only, down to a
+ * bounded depth. Two steps make a 3-opt move, so segment insertions (Or-3opt)
+ * are found as short moves.
+ *
+ * Cities are queued with don't-look bits by TourImprover. Flips reverse the
+ * shorter side of the tour array; reversing the other side mirrors the tour,
+ * which is tracked by an orientation flag instead of being undone.
+ */
+final class LinKernighan extends TourImprover {
+
+    /**
+     * How many candidates are tried at each of the first levels of a move.
+     */
+    private static final int[] breadth = {5, 3};
+
+    /**
+     * The most steps a move takes.
+     */
+    private static final int maxDepth = 50;
+
+    private static final ThreadLocal<LinKernighan> engines = ThreadLocal.withInitial(LinKernighan::new);
+
+    /**
+     * Whether the tour is read back to front: successors are then the
+     * cities before in the array.
+     */
+    private boolean mirrored;
+
+    /**
+     * The steps of the current move: the cities t2, t3 and t4 of each.
+     */
+    private final int[] stepT2 = new int[maxDepth];
+    private final int[] stepT3 = new int[maxDepth];
+    private final int[] stepT4 = new int[maxDepth];
+    private int depth;
+
+    /**
+     * The best closed gain of the current move, and its number of steps.
+     */
+    private long bestGain;
+    private int bestDepth;
+
+    /**
+     * The candidate steps being ranked at each level.
+     */
+    private final int[][] choiceT3 = new int[maxDepth][];
+    private final long[][] choiceValue = new long[maxDepth][];
+
+    private int t1;
+
+    private LinKernighan() {
+        for (int level = 0; level < maxDepth; level++) {
+            int width = level < breadth.length ? breadth[level] : 1;
+            choiceT3[level] = new int[width];
+            choiceValue[level] = new long[width];
+        }
+    }
+
+    /**
+     * Improve a chromosome in place until no Lin-Kernighan move improves it,
+     * or the deadline passes. Its cost is updated. Tours of asymmetric
+     * instances are left alone, as the moves reverse parts of the tour.
+     *
+     * @param distances  The distances between the cities.
+     * @param neighbours The candidate lists of the cities.
+     * @param chromosome The chromosome to improve.
+     * @param deadline   The System.nanoTime() after which to stop, or
+     *                   TourImprover.noDeadline.
+     * @return The change in cost, zero or negative.
+     */
+    static double improve(DistanceMatrix distances, CandidateLists neighbours, Chromosome chromosome, long deadline) {
+        return engines.get().improveTour(distances, neighbours, chromosome, deadline);
+    }
+
+    @Override
+    void start() {
+        mirrored = false;
+    }
+
+    private int next(int city) {
+        int i = position[city] + (mirrored ? -1 : 1);
+        return tour[offset + (i == n ? 0 : i < 0 ? n - 1 : i)];
+    }
+
+    private int previous(int city) {
+        int i = position[city] + (mirrored ? 1 : -1);
+        return tour[offset + (i == n ? 0 : i < 0 ? n - 1 : i)];
+    }
+
+    /**
+     * Look for an improving move that removes an edge at city, with either
+     * of its neighbours as t2, and apply it.
+     *
+     * @return The change in cost, negative, or zero if there was no move.
+     */
+    @Override
+    long improveCity(int city) {
+        t1 = city;
+        for (int side = 0; side < 2; side++) {
+            depth = 0;
+            bestGain = 0;
+            bestDepth = 0;
+            step(0, distances.get(t1, next(t1)));
+            if (bestGain > 0) {
+                while (depth > bestDepth) {
+                    undoStep();
+                }
+                push(t1);
+                for (int s = 0; s < depth; s++) {
+                    push(stepT2[s]);
+                    push(stepT3[s]);
+                    push(stepT4[s]);
+                }
+                return -bestGain;
+            }
+            // Read the tour the other way round, so t2 is the other neighbour
+            mirrored = !mirrored;
+        }
+        return 0;
+    }
+
+    /**
+     * Take the next step of the current move, and the steps after it.
+     * Returns with the steps still applied if the move found an improvement,
+     * otherwise with the tour as it was.
+     *
+     * @param level The number of steps taken so far.
+     * @param gain  The removed minus the added edge lengths so far, with the
+     *              tour still open at (t1, t2).
+     */
+    private void step(int level, long gain) {
+        if (level == maxDepth) {
+            return;
+        }
+        int t2 = next(t1);
+        int width = choiceT3[level].length;
+        int[] t3s = choiceT3[level];
+        long[] values = choiceValue[level];
+        int count = 0;
+
+        // Rank the candidates by the length of the edge they let go of
+        for (int r = 0; r < neighbours.k(); r++) {
+            int t3 = neighbours.get(t2, r);
+            long remaining = gain - distances.get(t2, t3);
+            if (remaining <= 0) {
+                break;
+            }
+            if (t3 == t1 || t3 == next(t2)) {
+                continue;
+            }
+            int t4 = previous(t3);
+            if (wasAdded(t3, t4) || wasRemoved(t2, t3)) {
+                continue;
+            }
+            long value = remaining + distances.get(t3, t4);
+            int at = count < width ? count++ : width;
+            while (at > 0 && values[at - 1] < value) {
+                if (at < width) {
+                    t3s[at] = t3s[at - 1];
+                    values[at] = values[at - 1];
+                }
+                at--;
+            }
+            if (at < width) {
+                t3s[at] = t3;
+                values[at] = value;
+            }
+        }
+
+        for (int c = 0; c < count; c++) {
+            int t3 = t3s[c];
+            int t4 = previous(t3);
+            long newGain = gain - distances.get(t2, t3) + distances.get(t3, t4);
+            flip(t2, t4);
+            stepT2[depth] = t2;
+            stepT3[depth] = t3;
+            stepT4[depth] = t4;
+            depth++;
+
+            long closed = newGain - distances.get(t4, t1);
+            if (closed > bestGain) {
+                bestGain = closed;
+                bestDepth = depth;
+            }
+            step(level + 1, newGain);
+            if (bestGain > 0) {
+                return;
+            }
+            undoStep();
+        }
+    }
+
+    /**
+     * Undo the last step of the current move.
+     */
+    private void undoStep() {
+        depth--;
+        // The flip left t1 t4 ... t2 t3; flipping t4..t2 restores t1 t2 ... t4 t3
+        flip(stepT4[depth], stepT2[depth]);
+    }
+
+    /**
+     * @return Whether the current move has added the edge (a, b).
+     */
+    private boolean wasAdded(int a, int b) {
+        for (int s = 0; s < depth; s++) {
+            if ((stepT2[s] == a && stepT3[s] == b) || (stepT2[s] == b && stepT3[s] == a)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Whether the current move has removed the edge (a, b).
+     */
+    private boolean wasRemoved(int a, int b) {
+        if (depth > 0 && ((t1 == a && stepT2[0] == b) || (t1 == b && stepT2[0] == a))) {
+            return true;
+        }
+        for (int s = 0; s < depth; s++) {
+            if ((stepT3[s] == a && stepT4[s] == b) || (stepT3[s] == b && stepT4[s] == a)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reverse the path that runs forward from a to b.
+     */
+    private void flip(int a, int b) {
+        int i = position[a];
+        int j = position[b];
+        if (mirrored) {
+            int temp = i;
+            i = j;
+            j = temp;
+        }
+        int length = j - i;
+        if (length < 0) {
+            length += n;
+        }
+        length++;
+        if (2 * length > n) {
+            // Reversing the rest of the array gives the same cycle read the
+            // other way round
+            reverseRange(j + 1 == n ? 0 : j + 1, i == 0 ? n - 1 : i - 1);
+            mirrored = !mirrored;
+        } else {
+            reverseRange(i, j);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/**
+ * First-improvement 2-opt and Or-opt local search over candidate neighbour
+ * lists, driven by don't-look bits.
+ *
+ * For every active city (see TourImprover) the moves around it are tried:
+ * 2-opt moves that add an edge from the city to one of its candidates, and
+ * Or-opt moves that lift a segment of one to three cities starting or ending
+ * at it and insert it next to a candidate, either way round. The first
+ * improving move is applied.
+ *
+ * Moves are applied to the tour array directly, reversing or shifting the
+ * shorter side of the tour.
+ */
+final class LocalSearch extends TourImprover {
+
+    /**
+     * The longest segment an Or-opt move lifts.
+     */
+    private static final int maxSegment = 3;
+
+    private static final ThreadLocal<LocalSearch> searches = ThreadLocal.withInitial(LocalSearch::new);
+
+    /**
+     * The segment being moved by an Or-opt move.
+     */
+    private final int[] segment = new int[maxSegment];
+
+    private LocalSearch() {
+    }
+
+    /**
+     * Improve a chromosome in place until it is 2-opt and Or-opt optimal with
+     * respect to the candidate lists, or the deadline passes. Its cost is
+     * updated. Tours of asymmetric instances are left alone, as the moves
+     * reverse parts of the tour.
+     *
+     * @param distances  The distances between the cities.
+     * @param neighbours The candidate lists of the cities.
+     * @param chromosome The chromosome to improve.
+     * @param deadline   The System.nanoTime() after which to stop, or
+     *                   TourImprover.noDeadline.
+     * @return The change in cost, zero or negative.
+     */
+    static double improve(DistanceMatrix distances, CandidateLists neighbours, Chromosome chromosome, long deadline) {
+        return searches.get().improveTour(distances, neighbours, chromosome, deadline);
+    }
+
+    private int next(int city) {
+        int i = position[city] + 1;
+        return tour[offset + (i == n ? 0 : i)];
+    }
+
+    private int previous(int city) {
+        int i = position[city] - 1;
+        return tour[offset + (i < 0 ? n - 1 : i)];
+    }
+
+    /**
+     * Apply the first improving move found around a city.
+     *
+     * @return The change in cost, negative, or zero if there was no move.
+     */
+    @Override
+    long improveCity(int a) {
+        long gain = twoOpt(a);
+        if (gain < 0) {
+            return gain;
+        }
+        for (int length = 1; length <= maxSegment; length++) {
+            gain = orOpt(a, length);
+            if (gain < 0) {
+                return gain;
+            }
+            if (length > 1) {
+                // The segment of the same length ending at a
+                int first = a;
+                for (int k = 1; k < length; k++) {
+                    first = previous(first);
+                }
+                gain = orOpt(first, length);
+                if (gain < 0) {
+                    return gain;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Try the 2-opt moves that add an edge from a to one of its candidates,
+     * removing the edge to a's successor or to its predecessor.
+     */
+    private long twoOpt(int a) {
+        for (int direction = 0; direction < 2; direction++) {
+            boolean forward = direction == 0;
+            int b = forward ? next(a) : previous(a);
+            int ab = distances.get(a, b);
+            for (int r = 0; r < neighbours.k(); r++) {
+                int c = neighbours.get(a, r);
+                int ac = distances.get(a, c);
+                if (ac >= ab) {
+                    break;
+                }
+                int d = forward ? next(c) : previous(c);
+                if (c == b || d == a) {
+                    continue;
+                }
+                long delta = (long) ac + distances.get(b, d) - ab - distances.get(c, d);
+                if (delta < 0) {
+                    // a b ... c d becomes a c ... b d, and the mirror image
+                    if (forward) {
+                        reverse(position[b], position[c]);
+                    } else {
+                        reverse(position[a], position[d]);
+                    }
+                    push(b);
+                    push(c);
+                    push(d);
+                    return delta;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Try moving the segment of length cities starting at first next to a
+     * candidate neighbour of either of its ends.
+     */
+    private long orOpt(int first, int length) {
+        int last = first;
+        for (int k = 1; k < length; k++) {
+            last = next(last);
+        }
+        int before = previous(first);
+        int after = next(last);
+        long removed = (long) distances.get(before, first) + distances.get(last, after) - distances.get(before, after);
+        if (removed <= 0) {
+            return 0;
+        }
+        for (int end = 0; end < 2; end++) {
+            // The end of the segment joined to the candidate, and the other end
+            int near = end == 0 ? first : last;
+            int far = end == 0 ? last : first;
+            for (int r = 0; r < neighbours.k(); r++) {
+                int c = neighbours.get(near, r);
+                int nc = distances.get(near, c);
+                if (nc >= removed) {
+                    break;
+                }
+                if (inSegment(c, first, length)) {
+                    continue;
+                }
+                for (int side = 0; side < 2; side++) {
+                    int c2 = side == 0 ? next(c) : previous(c);
+                    if (inSegment(c2, first, length)) {
+                        continue;
+                    }
+                    long delta = nc + distances.get(far, c2) - distances.get(c, c2) - removed;
+                    if (delta < 0) {
+                        // Insert between x and its successor y
+                        int x = side == 0 ? c : c2;
+                        int y = side == 0 ? c2 : c;
+                        boolean reversed = (near == first) == (side == 1);
+                        moveSegment(first, length, x, y, reversed);
+                        push(before);
+                        push(after);
+                        push(first);
+                        push(last);
+                        push(c);
+                        push(c2);
+                        return delta;
+                    }
+                }
+            }
+        }
+        return 0;
+    }
+
+    private boolean inSegment(int city, int first, int length) {
+        int along = position[city] - position[first];
+        if (along < 0) {
+            along += n;
+        }
+        return along < length;
+    }
+
+    /**
+     * Reverse the part of the tour from position i forward to position j,
+     * or the rest of the tour if that is shorter, which gives the same cycle.
+     */
+    private void reverse(int i, int j) {
+        int length = j - i;
+        if (length < 0) {
+            length += n;
+        }
+        length++;
+        if (2 * length > n) {
+            reverseRange(j + 1 == n ? 0 : j + 1, i == 0 ? n - 1 : i - 1);
+        } else {
+            reverseRange(i, j);
+        }
+    }
+
+    /**
+     * Move a segment to between two adjacent cities x and y, where y follows
+     * x, shifting whichever side of the tour between is shorter.
+     *
+     * @param first    The first city of the segment.
+     * @param length   The number of cities in the segment.
+     * @param x        The city the segment will follow.
+     * @param y        The city the segment will precede.
+     * @param reversed Whether the segment is inserted back to front.
+     */
+    private void moveSegment(int first, int length, int x, int y, boolean reversed) {
+        int start = position[first];
+        for (int k = 0; k < length; k++) {
+            segment[k] = tour[offset + (start + k) % n];
+        }
+        // The cities from the segment's successor up to x, and from y up to
+        // the segment's predecessor
+        int ahead = position[x] - (start + length);
+        ahead = ((ahead % n) + n) % n + 1;
+        int behind = n - length - ahead;
+        int to;
+        if (ahead <= behind) {
+            for (int k = 0; k < ahead; k++) {
+                place((start + length + k) % n, start + k);
+            }
+            to = start + ahead;
+        } else {
+            int from = position[y];
+            for (int k = behind - 1; k >= 0; k--) {
+                place((from + k) % n, from + k + length);
+            }
+            to = from;
+        }
+        for (int k = 0; k < length; k++) {
+            int city = segment[reversed ? length - 1 - k : k];
+            int i = (to + k) % n;
+            tour[offset + i] = city;
+            position[city] = i;
+        }
+    }
+
+    private void place(int from, int to) {
+        to %= n;
+        int city = tour[offset + from];
+        tour[offset + to] = city;
+        position[city] = to;
+    }
+}
@@ -0,0 +1,368 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Live counters of the evolve loop, published as a JMX MBean and, on
+ * request, as Prometheus text on a loopback HTTP port.
+ *
+ * The counters are LongAdders, which spread concurrent updates over cells
+ * instead of contending on one, so runs and islands on many threads can
+ * count at the same time. Runs gather their counts for a generation in
+ * plain arrays and add them here once per generation, and only time the
+ * phases of a sample of generations, so the metrics can stay on.
+ */
+class Metrics implements MetricsMBean, Closeable {
+
+    /**
+     * The stages of breeding a generation that are timed.
+     */
+    enum Phase {
+        SELECTION, CROSSOVER, MUTATION, EVALUATION, SORT;
+
+        /**
+         * @return The name of the phase in the Prometheus output.
+         */
+        String label() {
+            return name().toLowerCase();
+        }
+    }
+
+    private static final ObjectName name = objectName("GeneTSP:type=Metrics");
+
+    private static final TSP.Operator[] operators = TSP.Operator.values();
+
+    private static final Phase[] phases = Phase.values();
+
+    /**
+     * The JVM's per-thread allocation counter, or null if it has none.
+     */
+    private static final com.sun.management.ThreadMXBean allocations = allocationCounter();
+
+    private final LongAdder generations = new LongAdder();
+    private final LongAdder[] phaseNanos = adders(phases.length);
+    private final LongAdder[] applications = adders(operators.length);
+    private final LongAdder[] improvements = adders(operators.length);
+    private final LongAdder invalidTours = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private volatile double bestCost;
+    private volatile double meanCost;
+
+    /**
+     * The generation count and time of the last rate sample, and the rate
+     * they gave.
+     */
+    private long sampledGenerations;
+    private long sampledAt = System.nanoTime();
+    private double generationRate;
+
+    private HttpServer server;
+    private boolean registered;
+
+    /**
+     * Add the counts of one generation of one population.
+     *
+     * @param phaseNanos Nanoseconds spent in each Phase, per block of
+     *                   children.
+     * @param weight     How many generations the times stand for, 0 if the
+     *                   generation was not timed.
+     * @param applied    How often each TSP.Operator was applied, per block.
+     * @param improved   How often each TSP.Operator made its tour cheaper,
+     *                   per block.
+     * @param allocated  The bytes allocated during the generation.
+     */
+    void generation(long[][] phaseNanos, int weight, int[][] applied, int[][] improved, long allocated) {
+        generations.increment();
+        for (int p = 0; p < phases.length && weight > 0; p++) {
+            long nanos = 0;
+            for (long[] block : phaseNanos) {
+                nanos += block[p];
+            }
+            this.phaseNanos[p].add(nanos * weight);
+        }
+        for (int o = 0; o < operators.length; o++) {
+            long applications = 0;
+            long improvements = 0;
+            for (int b = 0; b < applied.length; b++) {
+                applications += applied[b][o];
+                improvements += improved[b][o];
+            }
+            if (applications > 0) {
+                this.applications[o].add(applications);
+                this.improvements[o].add(improvements);
+            }
+        }
+        allocatedBytes.add(allocated);
+    }
+
+    /**
+     * Add time spent in a phase outside of breeding.
+     *
+     * @param phase The phase.
+     * @param nanos The time, in nanoseconds.
+     */
+    void phase(Phase phase, long nanos) {
+        phaseNanos[phase.ordinal()].add(nanos);
+    }
+
+    /**
+     * Note the costs of the latest generation.
+     *
+     * @param best The lowest cost in the population.
+     * @param mean The mean cost of the population.
+     */
+    void costs(double best, double mean) {
+        bestCost = best;
+        meanCost = mean;
+    }
+
+    /**
+     * Count a child that was not a valid tour.
+     */
+    void invalidTour() {
+        invalidTours.increment();
+    }
+
+    /**
+     * @return The bytes the current thread has allocated so far, or 0 if the
+     *         JVM cannot tell.
+     */
+    static long allocatedBytes() {
+        return allocations == null ? 0 : allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Publish the metrics on the platform MBean server, as
+     * GeneTSP:type=Metrics.
+     */
+    void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+                registered = true;
+            }
+        } catch (JMException e) {
+            System.out.println("Could not publish the metrics over JMX: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Serve the metrics as Prometheus text at /metrics, on the loopback
+     * interface only.
+     *
+     * @param port The port.
+     * @throws IOException If the port cannot be bound.
+     */
+    void serve(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = prometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * @return The metrics in the Prometheus text exposition format.
+     */
+    String prometheus() {
+        StringBuilder text = new StringBuilder();
+        header(text, "genetsp_generations_total", "counter", "Generations evolved, counting each island's separately.");
+        text.append("genetsp_generations_total ").append(generations.sum()).append('\n');
+        header(text, "genetsp_generation_rate", "gauge", "Generations per second, over the last second or so.");
+        text.append("genetsp_generation_rate ").append(getGenerationRate()).append('\n');
+        header(text, "genetsp_phase_seconds_total", "counter", "Time spent in each phase of breeding, summed over threads.");
+        for (Phase phase : phases) {
+            text.append("genetsp_phase_seconds_total{phase=\"").append(phase.label()).append("\"} ")
+                    .append(phaseNanos[phase.ordinal()].sum() / 1e9).append('\n');
+        }
+        header(text, "genetsp_operator_applications_total", "counter", "How often each operator was applied.");
+        for (TSP.Operator operator : operators) {
+            text.append("genetsp_operator_applications_total{operator=\"").append(operator.label()).append("\"} ")
+                    .append(applications[operator.ordinal()].sum()).append('\n');
+        }
+        header(text, "genetsp_operator_improvements_total", "counter", "How often each operator made its tour cheaper.");
+        for (TSP.Operator operator : operators) {
+            text.append("genetsp_operator_improvements_total{operator=\"").append(operator.label()).append("\"} ")
+                    .append(improvements[operator.ordinal()].sum()).append('\n');
+        }
+        header(text, "genetsp_best_cost", "gauge", "The best cost of the latest generation.");
+        text.append("genetsp_best_cost ").append(bestCost).append('\n');
+        header(text, "genetsp_mean_cost", "gauge", "The mean cost of the latest generation.");
+        text.append("genetsp_mean_cost ").append(meanCost).append('\n');
+        header(text, "genetsp_invalid_tours_total", "counter", "Bred children that were not valid tours.");
+        text.append("genetsp_invalid_tours_total ").append(invalidTours.sum()).append('\n');
+        header(text, "genetsp_allocated_bytes_total", "counter", "Bytes allocated while evolving.");
+        text.append("genetsp_allocated_bytes_total ").append(allocatedBytes.sum()).append('\n');
+        return text.toString();
+    }
+
+    private static void header(StringBuilder text, String metric, String type, String help) {
+        text.append("# HELP ").append(metric).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(metric).append(' ').append(type).append('\n');
+    }
+
+    /**
+     * Stop serving the metrics and withdraw the MBean.
+     */
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        if (registered) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException e) {
+                // Already gone
+            }
+            registered = false;
+        }
+    }
+
+    @Override
+    public long getGenerations() {
+        return generations.sum();
+    }
+
+    @Override
+    public synchronized double getGenerationRate() {
+        long now = System.nanoTime();
+        if (now - sampledAt >= 1000000000L) {
+            long count = generations.sum();
+            generationRate = (count - sampledGenerations) * 1e9 / (now - sampledAt);
+            sampledGenerations = count;
+            sampledAt = now;
+        }
+        return generationRate;
+    }
+
+    @Override
+    public double getSelectionMillis() {
+        return millis(Phase.SELECTION);
+    }
+
+    @Override
+    public double getCrossoverMillis() {
+        return millis(Phase.CROSSOVER);
+    }
+
+    @Override
+    public double getMutationMillis() {
+        return millis(Phase.MUTATION);
+    }
+
+    @Override
+    public double getEvaluationMillis() {
+        return millis(Phase.EVALUATION);
+    }
+
+    @Override
+    public double getSortMillis() {
+        return millis(Phase.SORT);
+    }
+
+    private double millis(Phase phase) {
+        return phaseNanos[phase.ordinal()].sum() / 1e6;
+    }
+
+    @Override
+    public String[] getOperators() {
+        String[] labels = new String[operators.length];
+        for (int o = 0; o < operators.length; o++) {
+            labels[o] = operators[o].label();
+        }
+        return labels;
+    }
+
+    @Override
+    public long[] getOperatorApplications() {
+        return sums(applications);
+    }
+
+    @Override
+    public long[] getOperatorImprovements() {
+        return sums(improvements);
+    }
+
+    @Override
+    public double getBestCost() {
+        return bestCost;
+    }
+
+    @Override
+    public double getMeanCost() {
+        return meanCost;
+    }
+
+    @Override
+    public long getInvalidTours() {
+        return invalidTours.sum();
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return allocatedBytes.sum();
+    }
+
+    @Override
+    public double getAllocatedBytesPerGeneration() {
+        long count = generations.sum();
+        return count == 0 ? 0 : (double) allocatedBytes.sum() / count;
+    }
+
+    private static LongAdder[] adders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private static long[] sums(LongAdder[] adders) {
+        long[] sums = new long[adders.length];
+        for (int i = 0; i < adders.length; i++) {
+            sums[i] = adders[i].sum();
+        }
+        return sums;
+    }
+
+    private static ObjectName objectName(String name) {
+        try {
+            return new ObjectName(name);
+        } catch (JMException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+        if (!counter.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        if (!counter.isThreadAllocatedMemoryEnabled()) {
+            counter.setThreadAllocatedMemoryEnabled(true);
+        }
+        return counter;
+    }
+}
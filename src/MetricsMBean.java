@@ -0,0 +1,84 @@
+/**
+ * The management interface of Metrics, as seen in JConsole or any other JMX
+ * client. Counters cover every run and island since the program started.
+ */
+public interface MetricsMBean {
+
+    /**
+     * @return How many generations have been evolved, counting each island's
+     *         separately.
+     */
+    long getGenerations();
+
+    /**
+     * @return Generations per second, over the last second or so.
+     */
+    double getGenerationRate();
+
+    /**
+     * @return Time spent drawing tournaments and replacing rejected
+     *         children, summed over threads.
+     */
+    double getSelectionMillis();
+
+    /**
+     * @return Time spent breeding children from their parents.
+     */
+    double getCrossoverMillis();
+
+    /**
+     * @return Time spent in the mutations and local search.
+     */
+    double getMutationMillis();
+
+    /**
+     * @return Time spent computing and checking tour costs.
+     */
+    double getEvaluationMillis();
+
+    /**
+     * @return Time spent ranking populations.
+     */
+    double getSortMillis();
+
+    /**
+     * @return The names of the operators, in the order of the counts.
+     */
+    String[] getOperators();
+
+    /**
+     * @return How often each operator was applied.
+     */
+    long[] getOperatorApplications();
+
+    /**
+     * @return How often each operator left its tour cheaper than before.
+     */
+    long[] getOperatorImprovements();
+
+    /**
+     * @return The best cost of the latest generation recorded.
+     */
+    double getBestCost();
+
+    /**
+     * @return The mean cost of the latest generation recorded.
+     */
+    double getMeanCost();
+
+    /**
+     * @return How many bred children were not valid tours.
+     */
+    long getInvalidTours();
+
+    /**
+     * @return The bytes allocated while evolving, or 0 if the JVM cannot
+     *         measure it.
+     */
+    long getAllocatedBytes();
+
+    /**
+     * @return The mean bytes allocated per generation.
+     */
+    double getAllocatedBytesPerGeneration();
+}
@@ -0,0 +1,195 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * City movements arriving from outside the program, read on a background
+ * thread and handed to the solver in batches between generations.
+ *
+ * Each line moves one city: "city x y", the city's index followed by its new
+ * coordinates. Blank lines and lines starting with # are skipped, and a line
+ * reading "end" ends the feed. The source is a file or named pipe, "-" for
+ * standard input, or "tcp:PORT" to listen on a loopback port, serving one
+ * connection after another. Movements that arrive between two batches are
+ * merged, the latest position of a city winning, so a batch never holds more
+ * than one movement per city.
+ */
+class MovementFeed implements Closeable {
+
+    /**
+     * The latest reported position of each city with a pending movement.
+     */
+    private final int[] xs;
+    private final int[] ys;
+
+    /**
+     * Whether each city has a pending movement, and the pending cities in
+     * order of arrival.
+     */
+    private final boolean[] pending;
+    private final int[] pendingCities;
+    private int pendingCount;
+
+    /**
+     * Whether the source is exhausted, or the feed was closed.
+     */
+    private boolean ended;
+
+    /**
+     * The file, pipe, standard input or listening socket being read.
+     */
+    private final Closeable source;
+
+    private MovementFeed(int cityCount, Closeable source) {
+        this.xs = new int[cityCount];
+        this.ys = new int[cityCount];
+        this.pending = new boolean[cityCount];
+        this.pendingCities = new int[cityCount];
+        this.source = source;
+    }
+
+    /**
+     * Start reading movements from a source.
+     *
+     * @param spec      A path, "-" for standard input, or "tcp:PORT".
+     * @param cityCount The number of cities of the instance.
+     * @return The feed, already reading.
+     * @throws IOException If the source cannot be opened.
+     */
+    static MovementFeed open(String spec, int cityCount) throws IOException {
+        final MovementFeed feed;
+        Runnable reader;
+        if (spec.startsWith("tcp:")) {
+            int port = Integer.parseInt(spec.substring("tcp:".length()));
+            ServerSocket server = new ServerSocket(port, 1, InetAddress.getLoopbackAddress());
+            feed = new MovementFeed(cityCount, server);
+            reader = () -> feed.serve(server);
+        } else {
+            BufferedReader in = spec.equals("-")
+                    ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                    : Files.newBufferedReader(Paths.get(spec), StandardCharsets.UTF_8);
+            feed = new MovementFeed(cityCount, in);
+            reader = () -> {
+                try {
+                    feed.read(in);
+                } catch (IOException e) {
+                    System.out.println("Movement feed failed: " + e.getMessage());
+                }
+                feed.end();
+            };
+        }
+        Thread thread = new Thread(reader, "movement-feed");
+        thread.setDaemon(true);
+        thread.start();
+        return feed;
+    }
+
+    /**
+     * Accept connections one after another until the feed ends.
+     */
+    private void serve(ServerSocket server) {
+        while (!hasEnded()) {
+            try (Socket socket = server.accept();
+                    BufferedReader in = new BufferedReader(
+                            new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+                read(in);
+            } catch (IOException e) {
+                if (server.isClosed()) {
+                    end();
+                } else {
+                    System.out.println("Movement feed connection failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Read movements until the end of the stream or an "end" line.
+     */
+    private void read(BufferedReader in) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (line.equals("end")) {
+                end();
+                return;
+            }
+            String[] fields = line.split("\\s+");
+            try {
+                if (fields.length != 3) {
+                    throw new NumberFormatException();
+                }
+                move(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]), Integer.parseInt(fields[2]));
+            } catch (NumberFormatException e) {
+                System.out.println("Ignoring malformed movement: " + line);
+            }
+        }
+    }
+
+    private synchronized void move(int city, int x, int y) {
+        if (city < 0 || city >= pending.length) {
+            System.out.println("Ignoring movement of unknown city " + city);
+            return;
+        }
+        xs[city] = x;
+        ys[city] = y;
+        if (!pending[city]) {
+            pending[city] = true;
+            pendingCities[pendingCount++] = city;
+        }
+    }
+
+    private synchronized void end() {
+        ended = true;
+    }
+
+    private synchronized boolean hasEnded() {
+        return ended;
+    }
+
+    /**
+     * Take the movements that have arrived since the last batch.
+     *
+     * @param current The cities in their current positions.
+     * @return The cities with the batch applied, or null if nothing moved.
+     */
+    synchronized City[] drain(City[] current) {
+        if (pendingCount == 0) {
+            return null;
+        }
+        City[] positions = current.clone();
+        for (int i = 0; i < pendingCount; i++) {
+            int city = pendingCities[i];
+            positions[city] = new City(xs[city], ys[city]);
+            pending[city] = false;
+        }
+        pendingCount = 0;
+        return positions;
+    }
+
+    /**
+     * @return Whether the feed has ended and every movement has been taken.
+     */
+    synchronized boolean isFinished() {
+        return ended && pendingCount == 0;
+    }
+
+    /**
+     * Stop reading. Movements already received can still be drained.
+     */
+    @Override
+    public void close() throws IOException {
+        end();
+        source.close();
+    }
+}
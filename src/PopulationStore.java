@@ -0,0 +1,82 @@
+/**
+ * The tours and costs of a population, twice over: the current generation
+ * and the next, which trade places every generation. Each generation keeps
+ * its tours in one flat int[populationSize * n] and its costs in a double[],
+ * and its chromosomes are views of one slot each, their tours the slices of
+ * n cities at slot * n. The next generation is bred into the slices of the
+ * next arrays in place, so once the store exists no chromosome, tour or
+ * cost is allocated again.
+ *
+ * Ranking reorders the views, not the slots, so the order of a generation's
+ * chromosomes says nothing about where their tours lie.
+ */
+class PopulationStore {
+
+    /**
+     * The generation being read.
+     */
+    private Chromosome[] current;
+
+    /**
+     * The generation being written.
+     */
+    private Chromosome[] next;
+
+    /**
+     * Copy an initial population into the store.
+     *
+     * @param initial The initial population, which becomes the current
+     *                generation. Its chromosomes are not kept.
+     */
+    PopulationStore(Chromosome[] initial) {
+        int n = initial[0].n;
+        current = generation(initial.length, n);
+        next = generation(initial.length, n);
+        for (int i = 0; i < initial.length; i++) {
+            current[i].copyFrom(initial[i]);
+        }
+    }
+
+    /**
+     * @param size The number of chromosomes.
+     * @param n    The number of cities.
+     * @return Views of the slots of a new tours array and costs array.
+     */
+    private static Chromosome[] generation(int size, int n) {
+        int[] tours = new int[size * n];
+        double[] costs = new double[size];
+        Chromosome[] chromosomes = new Chromosome[size];
+        for (int slot = 0; slot < size; slot++) {
+            chromosomes[slot] = new Chromosome(n, tours, costs, slot);
+        }
+        return chromosomes;
+    }
+
+    /**
+     * @return The current generation.
+     */
+    Chromosome[] current() {
+        return current;
+    }
+
+    /**
+     * @return The chromosomes to breed the next generation into. Their
+     *         contents are stale until they are overwritten.
+     */
+    Chromosome[] next() {
+        return next;
+    }
+
+    /**
+     * Make the next generation the current one, and recycle the current
+     * generation's arrays for the generation after.
+     *
+     * @return The new current generation.
+     */
+    Chromosome[] swap() {
+        Chromosome[] temp = current;
+        current = next;
+        next = temp;
+        return current;
+    }
+}
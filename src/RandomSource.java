@@ -0,0 +1,120 @@
+/**
+ * A fast, seedable pseudo random generator (xoroshiro128**) that can be
+ * split into independent streams.
+ *
+ * A run derives every stream it needs from one master seed, in a fixed
+ * order, so a run can be reproduced exactly whatever threads it is spread
+ * over. A RandomSource is not thread safe; each thread gets its own stream.
+ */
+class RandomSource {
+
+    /**
+     * The increment of the SplitMix64 sequence used to expand seeds.
+     */
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    /**
+     * The generator state.
+     */
+    private long s0;
+    private long s1;
+
+    /**
+     * @param seed The seed. Equal seeds give equal sequences.
+     */
+    RandomSource(long seed) {
+        reseed(seed);
+    }
+
+    /**
+     * Restart the sequence from a new seed, reusing this object.
+     *
+     * @param seed The seed.
+     */
+    void reseed(long seed) {
+        s0 = mix(seed += GOLDEN_GAMMA);
+        s1 = mix(seed + GOLDEN_GAMMA);
+        if ((s0 | s1) == 0) {
+            s1 = 1;
+        }
+    }
+
+    /**
+     * @return The generator state, from which setState continues the
+     *         sequence.
+     */
+    long[] getState() {
+        return new long[] {s0, s1};
+    }
+
+    /**
+     * Continue the sequence from a state returned by getState.
+     *
+     * @param state The state.
+     */
+    void setState(long[] state) {
+        if ((state[0] | state[1]) == 0) {
+            throw new IllegalArgumentException("the all-zero state is not valid");
+        }
+        s0 = state[0];
+        s1 = state[1];
+    }
+
+    /**
+     * The SplitMix64 output function.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * @return A new generator whose sequence is independent of this one's.
+     *         Splitting advances this generator.
+     */
+    RandomSource split() {
+        return new RandomSource(nextLong());
+    }
+
+    /**
+     * @return The next 64 random bits.
+     */
+    long nextLong() {
+        long a = s0;
+        long b = s1;
+        long result = Long.rotateLeft(a * 5, 7) * 9;
+        b ^= a;
+        s0 = Long.rotateLeft(a, 24) ^ b ^ (b << 16);
+        s1 = Long.rotateLeft(b, 37);
+        return result;
+    }
+
+    /**
+     * @param bound The exclusive upper bound, which must be positive.
+     * @return A uniformly distributed int in [0, bound).
+     */
+    int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        // Lemire's multiply-and-reject method: no division on the common path
+        long product = (nextLong() >>> 32) * bound;
+        long low = product & 0xffffffffL;
+        if (low < bound) {
+            long threshold = (0x100000000L - bound) % bound;
+            while (low < threshold) {
+                product = (nextLong() >>> 32) * bound;
+                low = product & 0xffffffffL;
+            }
+        }
+        return (int) (product >>> 32);
+    }
+
+    /**
+     * @return A uniformly distributed double in [0, 1).
+     */
+    double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * Ranks chromosomes by cost.
+ *
+ * The costs are copied into a primitive array first, so the sort compares
+ * doubles instead of calling getCost() on every comparison, and the
+ * chromosomes are moved along with their keys. Callers that only need the
+ * best few chromosomes can ask for a partial ranking, which costs linear
+ * time plus the sort of the few.
+ */
+class Ranking {
+
+    /**
+     * Ranges at most this long are insertion sorted.
+     */
+    private static final int insertionThreshold = 16;
+
+    /**
+     * Per-thread scratch space for the keys, grown as needed.
+     */
+    private static final ThreadLocal<double[]> keys = new ThreadLocal<double[]>();
+
+    private Ranking() {
+    }
+
+    /**
+     * Sort the first num chromosomes by cost, cheapest first.
+     *
+     * @param chromosomes An array of chromosomes to sort.
+     * @param num         How much of the chromosome list to sort.
+     */
+    static void sort(Chromosome[] chromosomes, int num) {
+        if (num <= insertionThreshold) {
+            insertionSort(chromosomes, num);
+            return;
+        }
+        double[] key = keysFor(chromosomes, num);
+        quickSort(key, chromosomes, 0, num - 1);
+    }
+
+    /**
+     * Move the k cheapest of the first num chromosomes to the front, in order
+     * of cost. The order of the rest is unspecified.
+     *
+     * @param chromosomes An array of chromosomes.
+     * @param num         How much of the chromosome list to consider.
+     * @param k           How many of the cheapest chromosomes are needed.
+     */
+    static void selectBest(Chromosome[] chromosomes, int num, int k) {
+        if (k >= num || num <= insertionThreshold) {
+            sort(chromosomes, num);
+            return;
+        }
+        if (k <= 0) {
+            return;
+        }
+        if (k == 1) {
+            int best = 0;
+            for (int i = 1; i < num; i++) {
+                if (chromosomes[i].getCost() < chromosomes[best].getCost()) {
+                    best = i;
+                }
+            }
+            swap(chromosomes, 0, best);
+            return;
+        }
+        double[] key = keysFor(chromosomes, num);
+        int lo = 0;
+        int hi = num - 1;
+        // Quickselect until position k - 1 separates the k cheapest from the rest
+        while (hi > lo) {
+            if (hi - lo == 1) {
+                if (key[hi] < key[lo]) {
+                    swap(key, chromosomes, lo, hi);
+                }
+                break;
+            }
+            int split = partition(key, chromosomes, lo, hi);
+            if (split < k - 1) {
+                lo = split + 1;
+            } else if (split > k - 1) {
+                hi = split - 1;
+            } else {
+                break;
+            }
+        }
+        quickSort(key, chromosomes, 0, k - 1);
+    }
+
+    private static double[] keysFor(Chromosome[] chromosomes, int num) {
+        double[] key = keys.get();
+        if (key == null || key.length < num) {
+            key = new double[Math.max(num, 64)];
+            keys.set(key);
+        }
+        for (int i = 0; i < num; i++) {
+            key[i] = chromosomes[i].getCost();
+        }
+        return key;
+    }
+
+    private static void insertionSort(Chromosome[] chromosomes, int num) {
+        for (int i = 1; i < num; i++) {
+            Chromosome chromosome = chromosomes[i];
+            double cost = chromosome.getCost();
+            int j = i - 1;
+            while (j >= 0 && chromosomes[j].getCost() > cost) {
+                chromosomes[j + 1] = chromosomes[j];
+                j--;
+            }
+            chromosomes[j + 1] = chromosome;
+        }
+    }
+
+    private static void quickSort(double[] key, Chromosome[] chromosomes, int lo, int hi) {
+        while (hi - lo >= insertionThreshold) {
+            int split = partition(key, chromosomes, lo, hi);
+            // Recurse into the smaller half so the stack stays logarithmic
+            if (split - lo < hi - split) {
+                quickSort(key, chromosomes, lo, split - 1);
+                lo = split + 1;
+            } else {
+                quickSort(key, chromosomes, split + 1, hi);
+                hi = split - 1;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            double cost = key[i];
+            Chromosome chromosome = chromosomes[i];
+            int j = i - 1;
+            while (j >= lo && key[j] > cost) {
+                key[j + 1] = key[j];
+                chromosomes[j + 1] = chromosomes[j];
+                j--;
+            }
+            key[j + 1] = cost;
+            chromosomes[j + 1] = chromosome;
+        }
+    }
+
+    /**
+     * Partition [lo, hi] around a median-of-three pivot. The range must hold
+     * at least three chromosomes.
+     *
+     * @return The final position of the pivot.
+     */
+    private static int partition(double[] key, Chromosome[] chromosomes, int lo, int hi) {
+        int mid = (lo + hi) >>> 1;
+        if (key[mid] < key[lo]) {
+            swap(key, chromosomes, mid, lo);
+        }
+        if (key[hi] < key[lo]) {
+            swap(key, chromosomes, hi, lo);
+        }
+        if (key[hi] < key[mid]) {
+            swap(key, chromosomes, hi, mid);
+        }
+        // The median now sits at mid; park it at hi - 1 while partitioning
+        swap(key, chromosomes, mid, hi - 1);
+        double pivot = key[hi - 1];
+        int i = lo;
+        int j = hi - 1;
+        while (true) {
+            while (key[++i] < pivot) {
+            }
+            while (j > lo && key[--j] > pivot) {
+            }
+            if (i >= j) {
+                break;
+            }
+            swap(key, chromosomes, i, j);
+        }
+        swap(key, chromosomes, i, hi - 1);
+        return i;
+    }
+
+    private static void swap(double[] key, Chromosome[] chromosomes, int i, int j) {
+        double tempKey = key[i];
+        key[i] = key[j];
+        key[j] = tempKey;
+        swap(chromosomes, i, j);
+    }
+
+    private static void swap(Chromosome[] chromosomes, int i, int j) {
+        Chromosome temp = chromosomes[i];
+        chromosomes[i] = chromosomes[j];
+        chromosomes[j] = temp;
+    }
+}
@@ -0,0 +1,257 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes a structured record of every generation of every run, as CSV or
+ * JSON lines, without holding up the runs.
+ *
+ * Runs hand records to a bounded queue and carry on; one background thread
+ * formats them into a buffer and writes the buffer to the file's channel
+ * whenever the queue runs dry or the buffer fills. Should the writer ever
+ * fall a whole queue behind, further records are dropped and counted rather
+ * than making the runs wait. close() writes out everything queued; it is
+ * also called when the JVM shuts down.
+ */
+class ResultsWriter implements Closeable {
+
+    /**
+     * The layouts a log can be written in.
+     */
+    enum Format {
+        CSV, JSONL
+    }
+
+    /**
+     * The state of a run after one generation.
+     */
+    static final class Record {
+        final int run;
+        final int island;
+        final int generation;
+        final int epoch;
+        final double best;
+        final double mean;
+        final double worst;
+        final long[] operators;
+        final long elapsedMillis;
+
+        /**
+         * @param run           The run, numbered from 1.
+         * @param island        The island within the run, 0 without islands.
+         * @param generation    The generation just finished.
+         * @param epoch         The city configuration of the costs.
+         * @param best          The lowest cost in the population.
+         * @param mean          The mean cost of the population.
+         * @param worst         The highest cost in the population.
+         * @param operators     How often each TSP.Operator was applied during
+         *                      the generation, in declaration order.
+         * @param elapsedMillis The time since the run started.
+         */
+        Record(int run, int island, int generation, int epoch, double best, double mean, double worst,
+                long[] operators, long elapsedMillis) {
+            this.run = run;
+            this.island = island;
+            this.generation = generation;
+            this.epoch = epoch;
+            this.best = best;
+            this.mean = mean;
+            this.worst = worst;
+            this.operators = operators;
+            this.elapsedMillis = elapsedMillis;
+        }
+    }
+
+    /**
+     * How many records can wait to be written.
+     */
+    private static final int capacity = 1 << 16;
+
+    private static final TSP.Operator[] operators = TSP.Operator.values();
+
+    /**
+     * Queued by close() to stop the writer thread.
+     */
+    private static final Record END = new Record(0, 0, 0, 0, 0, 0, 0, new long[0], 0);
+
+    private final BlockingQueue<Record> queue = new ArrayBlockingQueue<Record>(capacity);
+    private final AtomicLong dropped = new AtomicLong();
+    private final FileChannel channel;
+    private final Format format;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+    private final StringBuilder line = new StringBuilder();
+    private final Thread writer;
+    private final Thread shutdownHook;
+    private boolean closed;
+
+    private ResultsWriter(FileChannel channel, Format format) {
+        this.channel = channel;
+        this.format = format;
+        this.writer = new Thread(this::write, "results-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+        this.shutdownHook = new Thread(() -> {
+            try {
+                close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Open a log, appending to the file if it exists.
+     *
+     * @param path   The file.
+     * @param format The layout of the records.
+     * @return The writer.
+     * @throws IOException If the file cannot be opened.
+     */
+    static ResultsWriter open(Path path, Format format) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        ResultsWriter writer = new ResultsWriter(channel, format);
+        if (format == Format.CSV && channel.size() == 0) {
+            StringBuilder header = new StringBuilder("run,island,generation,epoch,best,mean,worst");
+            for (TSP.Operator operator : operators) {
+                header.append(',').append(operator.label());
+            }
+            header.append(",elapsed_ms\n");
+            synchronized (writer) {
+                writer.emit(header);
+            }
+        }
+        return writer;
+    }
+
+    /**
+     * Queue a record to be written. Never waits.
+     *
+     * @param record The record.
+     */
+    void write(Record record) {
+        if (!queue.offer(record)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void write() {
+        List<Record> batch = new ArrayList<Record>();
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                synchronized (this) {
+                    for (Record record : batch) {
+                        if (record == END) {
+                            drain();
+                            return;
+                        }
+                        line.setLength(0);
+                        format(record);
+                        emit(line);
+                    }
+                    // Nothing more queued for now, so let the records out
+                    drain();
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.out.println("Writing the results log failed: " + e.getMessage());
+        }
+    }
+
+    private void format(Record record) {
+        if (format == Format.CSV) {
+            line.append(record.run).append(',').append(record.island).append(',')
+                    .append(record.generation).append(',').append(record.epoch).append(',')
+                    .append(record.best).append(',').append(record.mean).append(',').append(record.worst);
+            for (int i = 0; i < operators.length; i++) {
+                line.append(',').append(record.operators[i]);
+            }
+            line.append(',').append(record.elapsedMillis).append('\n');
+        } else {
+            line.append("{\"run\":").append(record.run)
+                    .append(",\"island\":").append(record.island)
+                    .append(",\"generation\":").append(record.generation)
+                    .append(",\"epoch\":").append(record.epoch)
+                    .append(",\"best\":").append(record.best)
+                    .append(",\"mean\":").append(record.mean)
+                    .append(",\"worst\":").append(record.worst)
+                    .append(",\"operators\":{");
+            for (int i = 0; i < operators.length; i++) {
+                if (i > 0) {
+                    line.append(',');
+                }
+                line.append('"').append(operators[i].label()).append("\":").append(record.operators[i]);
+            }
+            line.append("},\"elapsedMs\":").append(record.elapsedMillis).append("}\n");
+        }
+    }
+
+    /**
+     * Copy text into the buffer, writing the buffer out whenever it fills.
+     * The text is ASCII, so each char is one byte.
+     */
+    private void emit(CharSequence text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            buffer.put((byte) text.charAt(i));
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Write out every record queued so far and close the file.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            if (writer.isAlive()) {
+                queue.put(END);
+                writer.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // Already shutting down, which is what called us
+        }
+        synchronized (this) {
+            drain();
+        }
+        channel.force(false);
+        channel.close();
+        if (dropped.get() > 0) {
+            System.out.println("The results log fell behind and dropped " + dropped.get() + " records");
+        }
+    }
+}
@@ -2,14 +2,22 @@ import java.applet.Applet;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.Time;
 import java.text.*;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.Random;
 import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 import java.awt.*; 
 
 import javax.swing.*;
@@ -38,25 +46,359 @@ public class TSP {
      */
     protected static int selectedParents;
 
+    /**
+     * How many generations each run evolves for.
+     */
+    protected static int generations = 100;
+
+    /**
+     * How many generations pass between movements of the cities.
+     */
+    protected static final int cityMoveInterval = 5;
+
+    /**
+     * How many runs may evolve at the same time.
+     */
+    protected static int threads = 1;
+
+    /**
+     * Parents are drawn from this many of the cheapest chromosomes.
+     */
+    private static final int tournamentSize = 4;
+
+    /**
+     * How many parents each tournament draws.
+     */
+    private static final int tournamentNum = 2;
+
+    /**
+     * Per-thread scratch space for the parents drawn by a tournament.
+     */
+    private static final ThreadLocal<Chromosome[]> tournaments =
+            ThreadLocal.withInitial(() -> new Chromosome[tournamentNum]);
+
+    /**
+     * The pool that breeds the children of a generation in parallel, or null
+     * to breed them on the calling thread.
+     */
+    private static ForkJoinPool breedingPool;
+
+    /**
+     * How many children are bred as one block, with one random stream.
+     */
+    private static final int breedingGrain = 16;
+
+    /**
+     * The master seed every random stream of an experiment is split from.
+     */
+    private static long seed = System.nanoTime();
+
+    /**
+     * How many populations (islands) each run evolves side by side.
+     */
+    protected static int islands = 1;
+
+    /**
+     * How many generations pass between migrations between islands.
+     */
+    protected static int migrationInterval = 10;
+
+    /**
+     * Which islands send their best tours to which.
+     */
+    protected static IslandModel.Topology topology = IslandModel.Topology.RING;
+
+    /**
+     * The crossover operators a run can breed with.
+     */
+    enum Crossover {
+        /**
+         * Sequential constructive crossover, applied to a tenth of the children.
+         */
+        SEQUENTIAL,
+        /**
+         * Edge assembly crossover of every chromosome with a random partner.
+         */
+        EAX
+    }
+
+    /**
+     * Which crossover operator breeds the children.
+     */
+    protected static Crossover crossover = Crossover.SEQUENTIAL;
+
+    /**
+     * The chromosomes the local search is applied to.
+     */
+    enum Refinement {
+        /**
+         * No local search.
+         */
+        NONE,
+        /**
+         * The cheapest few chromosomes, the parents of the tournaments, before
+         * each generation is bred.
+         */
+        ELITE,
+        /**
+         * Every child, after its mutations.
+         */
+        OFFSPRING
+    }
+
+    /**
+     * Which chromosomes the local search refines.
+     */
+    protected static Refinement refinement = Refinement.NONE;
+
+    /**
+     * Whether the local search is Lin-Kernighan rather than 2-opt and Or-opt.
+     */
+    protected static boolean linKernighan = false;
+
+    /**
+     * The ways a run can search for tours.
+     */
+    enum Solver {
+        /**
+         * The genetic algorithm.
+         */
+        GA,
+        /**
+         * Lin-Kernighan alone, on the best tour, once per generation.
+         */
+        LK
+    }
+
+    /**
+     * How each run searches for tours.
+     */
+    protected static Solver solver = Solver.GA;
+
+    /**
+     * The operators whose use is counted for the results log.
+     */
+    enum Operator {
+        /**
+         * A child bred by crossover.
+         */
+        CROSSOVER,
+        /**
+         * One of the mutations.
+         */
+        SHUFFLE, GREEDY, INVERSION,
+        /**
+         * A tour improved by local search.
+         */
+        REFINE,
+        /**
+         * A child that lost to its parents and was replaced by the previous
+         * chromosome of its slot.
+         */
+        REJECT;
+
+        /**
+         * @return The name of the operator in the results log.
+         */
+        String label() {
+            return name().toLowerCase();
+        }
+    }
+
+    /**
+     * Where the record of every generation goes, or null.
+     */
+    private static ResultsWriter results;
+
+    /**
+     * The live counters of every run, published over JMX.
+     */
+    private static final Metrics metrics = new Metrics();
+
+    /**
+     * How many milliseconds of local search each generation may spend, or 0
+     * for no limit. With a limit, results depend on the speed of the machine.
+     */
+    protected static long localSearchBudget = 0;
+
+    /**
+     * The TSPLIB instance being solved, whose cities never move, or null
+     * when the cities come from a city list.
+     */
+    private static TsplibInstance instance;
+
+    /**
+     * Time-dependent travel costs, or null when a tour costs the sum of its
+     * edges' distances.
+     */
+    private static TravelTimes travelTimes;
+
+    /**
+     * Where city movements come from while a run is live, or null for the
+     * simulated movement of MoveCities.
+     */
+    private static MovementFeed feed;
+
+    /**
+     * Where the best tour is published whenever it improves, or null.
+     */
+    private static TourPublisher publisher;
+
+    /**
+     * How many nearest neighbours each city's candidate list holds.
+     */
+    private static int neighbourCount = 10;
+
+    /**
+     * How many earlier city configurations each run remembers the best tours
+     * of, to seed its population when the cities move; 0 remembers none.
+     */
+    protected static int archiveCapacity = 0;
+
+    /**
+     * Where the state of the run is checkpointed, or null.
+     */
+    private static CheckpointWriter checkpoints;
+
+    /**
+     * A checkpoint is taken every this many generations.
+     */
+    protected static int checkpointInterval = 50;
+
+    /**
+     * The checkpoint the run resumes from, or null for a fresh run.
+     */
+    private static Checkpoint resume;
+
     /**
      * The current generation
      */
-    protected static int generation;
+    protected int generation;
 
     /**
      * The list of cities (with current movement applied).
      */
-    protected static City[] cities;
+    protected City[] cities;
     
     /**
      * The list of cities that will be used to determine movement.
      */
-    private static City[] originalCities;
+    private final City[] originalCities;
+
+    /**
+     * The distances between the cities in their current positions.
+     */
+    protected DistanceMatrix distances;
+
+    /**
+     * The city configuration, advanced every time the cities move.
+     */
+    protected int epoch;
+
+    /**
+     * The cities that moved in the last movement, and whether each city did.
+     */
+    private final int[] movedCities;
+    private final boolean[] movedMark;
+    private int movedCount;
+
+    /**
+     * Population costs are patched edge by edge while at most one city in
+     * this many has moved, and recomputed in full otherwise.
+     */
+    private static final int patchFraction = 8;
+
+    /**
+     * The nearest neighbours of each city, kept in step with the distances.
+     */
+    protected CandidateLists neighbours;
+
+    /**
+     * The best tours of earlier city configurations, or null.
+     */
+    private final EnvironmentArchive archive;
+
+    /**
+     * When set (-Dtsp.checkCost=true), every incrementally updated child cost
+     * is cross-checked against a full recomputation.
+     */
+    private static final boolean checkCost = Boolean.getBoolean("tsp.checkCost");
+
+    /**
+     * The phases of one generation in this many are timed for the metrics,
+     * and stand for the others, as reading the clock around every operator
+     * of every child would slow small instances noticeably.
+     */
+    private static final int timingInterval = 8;
 
     /**
      * The list of chromosomes.
      */
-    protected static Chromosome[] chromosomes;
+    protected Chromosome[] chromosomes;
+
+    /**
+     * The double buffered storage behind the list of chromosomes.
+     */
+    private PopulationStore population;
+
+    /**
+     * The lowest cost seen during this run.
+     */
+    private double genMin;
+
+    /**
+     * The random source of this run. Every other stream the run uses is
+     * split from it, in a fixed order.
+     */
+    private final RandomSource random;
+
+    /**
+     * One stream per block of children, reseeded from the run's source every
+     * generation.
+     */
+    private final RandomSource[] breedingStreams;
+
+    /**
+     * When the local search of the current generation has to stop.
+     */
+    private long localSearchDeadline;
+
+    /**
+     * The cost and city configuration of the last tour published.
+     */
+    private double publishedCost;
+    private int publishedEpoch = -1;
+
+    /**
+     * Which run, and which island of the run, this is, for the results log.
+     */
+    private int runId = 1;
+    private int islandId;
+
+    /**
+     * When the run started, as System.nanoTime().
+     */
+    private long startTime;
+
+    /**
+     * How often each operator was applied in the current generation, per
+     * block of children, so blocks bred on different threads count apart.
+     */
+    private final int[][] operatorCounts;
+
+    /**
+     * How often each operator left its tour cheaper in the current
+     * generation, the nanoseconds spent in each Metrics.Phase, and the bytes
+     * allocated breeding, per block of children.
+     */
+    private final int[][] operatorImprovements;
+    private final long[][] phaseNanos;
+    private final long[] blockAllocations;
+
+    /**
+     * Whether the phases of the current generation are being timed.
+     */
+    private boolean timed;
 
     /**
     * Frame to display cities and paths
@@ -70,7 +412,6 @@ public class TSP {
     private static double avg;
     private static double max;
     private static double sum;
-    private static double genMin;
 
     /**
      * Width and Height of City Map, DO NOT CHANGE THESE VALUES!
@@ -78,10 +419,71 @@ public class TSP {
     private static int width = 600;
     private static int height = 600;
 
+    /**
+     * The city map and the stats console of the GUI.
+     */
+    private static TourView view;
+    private static ConsoleLog console;
+
+    /**
+     * Whether the GUI is enabled.
+     */
+    private static boolean display;
 
-    private static Panel statsArea;
-    private static TextArea statsText;
+    /**
+     * Set up an independent run of the genetic algorithm. Each run owns its
+     * population, city positions, distances and candidate lists, so several
+     * runs can evolve on different threads at the same time.
+     *
+     * @param originalCities The cities in their unmoved positions.
+     * @param random         The random source of the run.
+     */
+    TSP(City[] originalCities, RandomSource random) {
+        this.random = random;
+        this.breedingStreams = breedingStreams();
+        this.operatorCounts = new int[breedingStreams.length][Operator.values().length];
+        this.operatorImprovements = new int[breedingStreams.length][Operator.values().length];
+        this.phaseNanos = new long[breedingStreams.length][Metrics.Phase.values().length];
+        this.blockAllocations = new long[breedingStreams.length];
+        this.originalCities = originalCities;
+        this.cities = originalCities;
+        this.epoch = 0;
+        if (instance != null) {
+            this.distances = instance.getDistances();
+            this.neighbours = instance.candidates(neighbourCount);
+        } else {
+            this.distances = new DistanceMatrix(cities, epoch);
+            this.neighbours = new CandidateLists(cities, neighbourCount);
+        }
+        this.distances.setTravelTimes(travelTimes);
+        this.movedCities = new int[cities.length];
+        this.movedMark = new boolean[cities.length];
+        this.archive = archive(cities.length);
+    }
 
+    /**
+     * Set up a run that shares the cities, distances and candidate lists of
+     * another run, as the islands of an island model do.
+     *
+     * @param environment The run whose city state is shared.
+     * @param random      The random source of the run.
+     */
+    TSP(TSP environment, RandomSource random) {
+        this.random = random;
+        this.breedingStreams = breedingStreams();
+        this.operatorCounts = new int[breedingStreams.length][Operator.values().length];
+        this.operatorImprovements = new int[breedingStreams.length][Operator.values().length];
+        this.phaseNanos = new long[breedingStreams.length][Metrics.Phase.values().length];
+        this.blockAllocations = new long[breedingStreams.length];
+        this.originalCities = environment.originalCities;
+        this.cities = environment.cities;
+        this.epoch = environment.epoch;
+        this.distances = environment.distances;
+        this.neighbours = environment.neighbours;
+        this.movedCities = new int[cities.length];
+        this.movedMark = new boolean[cities.length];
+        this.archive = archive(cities.length);
+    }
 
     /*
      * Writing to an output file with the costs.
@@ -105,7 +507,7 @@ public class TSP {
      */
     private static void print(boolean guiEnabled, String content) {
         if(guiEnabled) {
-            statsText.append(content + "\n");
+            console.append(content);
         }
 
         System.out.println(content);
@@ -114,168 +516,368 @@ public class TSP {
 	/*
      *  Runs the genetic algorithm for the dynamic TSP problem
      */
-    public static void evolve() {
-        Random generator = new Random();
-        int tournamentSize = 4;
-        int tournamentNum = 2;
+    public void evolve() {
+        long allocation = Metrics.allocatedBytes();
+        timed = generation % timingInterval == 0;
+        long mark = timed ? System.nanoTime() : 0;
+        localSearchDeadline = localSearchBudget > 0
+                ? System.nanoTime() + localSearchBudget * 1000000L : TourImprover.noDeadline;
+        for (int block = 0; block < operatorCounts.length; block++) {
+            Arrays.fill(operatorCounts[block], 0);
+            Arrays.fill(operatorImprovements[block], 0);
+            Arrays.fill(phaseNanos[block], 0);
+            blockAllocations[block] = 0;
+        }
+        long[] phases = phaseNanos[0];
+        if (solver == Solver.LK) {
+            // No breeding: re-optimise the best tour for the current positions
+            Ranking.selectBest(chromosomes, populationSize, 1);
+            mark = lap(phases, Metrics.Phase.SORT, mark);
+            LinKernighan.improve(distances, neighbours, chromosomes[0], localSearchDeadline);
+            lap(phases, Metrics.Phase.MUTATION, mark);
+            metrics.generation(phaseNanos, timed ? timingInterval : 0, operatorCounts, operatorImprovements, Metrics.allocatedBytes() - allocation);
+            return;
+        }
+
+        // Tournaments only draw from the cheapest few, so only those need ranking
+        Ranking.selectBest(chromosomes, populationSize, tournamentSize);
+        Chromosome[] newChromosomes = population.next();
+        mark = lap(phases, Metrics.Phase.SORT, mark);
+        if (refinement == Refinement.ELITE) {
+            for (int i = 0; i < tournamentSize; i++) {
+                refine(chromosomes[i], operatorCounts[0], operatorImprovements[0]);
+            }
+            mark = lap(phases, Metrics.Phase.MUTATION, mark);
+            Ranking.sort(chromosomes, tournamentSize);
+            lap(phases, Metrics.Phase.SORT, mark);
+        }
+        
+        // Every block of children gets its own stream, derived in a fixed order,
+        // so the outcome does not depend on which thread breeds which block
+        for (RandomSource stream : breedingStreams) {
+            stream.reseed(random.nextLong());
+        }
+        // Blocks count their own allocations, on whichever thread breeds them
+        long allocated = Metrics.allocatedBytes() - allocation;
+        if (breedingPool == null) {
+            for (int block = 0; block < breedingStreams.length; block++) {
+                breedBlock(newChromosomes, block);
+            }
+        } else {
+            breedingPool.invoke(new Breeding(newChromosomes, 0, breedingStreams.length));
+        }
+        
+        chromosomes = population.swap();
+        for (long block : blockAllocations) {
+            allocated += block;
+        }
+        metrics.generation(phaseNanos, timed ? timingInterval : 0, operatorCounts, operatorImprovements, allocated);
+        
+        /*for (int i = 0; i < populationSize; i++) {
+            if (1.0/newChromosomes[i].getCost() > 1.0/chromosomes[populationSize - 1 - i].getCost()) {
+                chromosomes[populationSize - 1 - i] = newChromosomes[i];
+            } else {
+                break;
+            }
+        }*/
+        
+    }
+
+    /**
+     * Breed one block of children with the block's own random stream.
+     *
+     * @param newChromosomes The next generation.
+     * @param block          The block to breed.
+     */
+    private void breedBlock(Chromosome[] newChromosomes, int block) {
+        long allocation = Metrics.allocatedBytes();
+        int from = block * breedingGrain;
+        breed(newChromosomes, from, Math.min(populationSize, from + breedingGrain), breedingStreams[block],
+                operatorCounts[block], operatorImprovements[block], phaseNanos[block]);
+        blockAllocations[block] = Metrics.allocatedBytes() - allocation;
+    }
+
+    /**
+     * Add the time since a mark to a phase.
+     *
+     * @param phases The nanoseconds spent in each Metrics.Phase.
+     * @param phase  The phase the time was spent in.
+     * @param since  The mark, as System.nanoTime(), or 0 when not timing.
+     * @return The time now, the mark for the next phase, or 0 when not
+     *         timing.
+     */
+    private static long lap(long[] phases, Metrics.Phase phase, long since) {
+        if (since == 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        phases[phase.ordinal()] += now - since;
+        return now;
+    }
+
+    /**
+     * Breed the children for positions [from, to) of the next generation.
+     * Children only read the current population and write their own slot, so
+     * disjoint ranges can be bred on different threads.
+     *
+     * @param newChromosomes The next generation.
+     * @param from           The first position to fill.
+     * @param to             One past the last position to fill.
+     * @param generator      The random source for these children.
+     * @param counts         Where to count the operators applied.
+     * @param improvements   Where to count the operators that made their
+     *                       tour cheaper.
+     * @param phases         Where to add the time spent in each phase.
+     */
+    private void breed(Chromosome[] newChromosomes, int from, int to, RandomSource generator, int[] counts,
+            int[] improvements, long[] phases) {
         double pm1 = 0.2;
         double pm2 = 0.99;
         double pm3 = 0.2;
         double pc1 = 0.1;
-        Chromosome.sortChromosomes(chromosomes, populationSize);
-        Chromosome[] newChromosomes = new Chromosome[populationSize];
+        Chromosome[] tournament = tournaments.get();
+        long mark = timed ? System.nanoTime() : 0;
         
-        for (int i = 0; i < populationSize; i++) {
-            Chromosome[] tournament = new Chromosome[tournamentNum];
-            ArrayList<Integer> visitedChromosome = new ArrayList<Integer>();
-            int j = 0;
-            while (j < tournamentNum) {
-                int member = generator.nextInt(tournamentSize);
-                if (!visitedChromosome.contains(member)) {
-                    tournament[j] = chromosomes[member];
-                    visitedChromosome.add(member);
-                    j++;
+        for (int i = from; i < to; i++) {
+            if (crossover == Crossover.EAX) {
+                // Every slot is crossed with a random partner and only a
+                // cheaper child replaces it, which keeps the population diverse
+                tournament[0] = chromosomes[i];
+                tournament[1] = chromosomes[(i + 1 + generator.nextInt(populationSize - 1)) % populationSize];
+            } else {
+                int j = 0;
+                while (j < tournamentNum) {
+                    Chromosome member = chromosomes[generator.nextInt(tournamentSize)];
+                    boolean drawn = false;
+                    for (int k = 0; k < j; k++) {
+                        drawn |= tournament[k] == member;
+                    }
+                    if (!drawn) {
+                        tournament[j] = member;
+                        j++;
+                    }
                 }
+                Chromosome.sortChromosomes(tournament, tournamentNum);
             }
-            Chromosome.sortChromosomes(tournament, tournamentNum);
-            
+            mark = lap(phases, Metrics.Phase.SELECTION, mark);
             
-            Chromosome[] children ;
+            // The child is bred in place, in the chromosome recycled for slot i
+            Chromosome child = newChromosomes[i];
             double prob = generator.nextDouble();
-            if (prob < pc1) {
-                children = new Chromosome[1];
-                children[0] = Chromosome.sequentialCrossover(cities, tournament[0], tournament[1]);
+            boolean improved = false;
+            if (crossover == Crossover.EAX) {
+                EdgeAssemblyCrossover.crossover(distances, neighbours, tournament[0], tournament[1], generator, child);
+                counts[Operator.CROSSOVER.ordinal()]++;
+                improved = child.getCost() < tournament[0].getCost();
+                if (improved) {
+                    improvements[Operator.CROSSOVER.ordinal()]++;
+                } else {
+                    child.copyFrom(tournament[0]);
+                }
+            } else if (prob < pc1) {
+                Chromosome.sequentialCrossover(distances, tournament[0], tournament[1], child);
+                mark = lap(phases, Metrics.Phase.CROSSOVER, mark);
+                child.calculateCost(distances);
+                mark = lap(phases, Metrics.Phase.EVALUATION, mark);
+                counts[Operator.CROSSOVER.ordinal()]++;
+                if (child.getCost() < tournament[0].getCost()) {
+                    improvements[Operator.CROSSOVER.ordinal()]++;
+                }
 
             } else {
-                children = new Chromosome[1];
-                children[0] = new Chromosome(tournament[0]);
+                child.copyFrom(tournament[0]);
             }
-            //Chromosome[] children  = {new Chromosome(chromosomes[0])};
-            //double prob;
-            for (Chromosome child: children) {
-                prob = generator.nextDouble();
-                if (prob < pm1) {
-                    child.shuffleMutate(0.8);
-                }
-                if (prob < pm3) {
-                    child.greedyMutate(cities);
+            mark = lap(phases, Metrics.Phase.CROSSOVER, mark);
+            
+            // An improving edge assembly child is kept as it is; the mutations
+            // only keep up the search when the parents have no better child
+            prob = improved ? 1 : generator.nextDouble();
+            if (prob < pm1) {
+                if (child.shuffleMutate(distances, 0.8, generator) < 0) {
+                    improvements[Operator.SHUFFLE.ordinal()]++;
                 }
-                if (prob < pm2){
-                    child.inversionMutate();
+                counts[Operator.SHUFFLE.ordinal()]++;
+            }
+            if (prob < pm3) {
+                if (child.greedyMutate(distances, neighbours, generator) < 0) {
+                    improvements[Operator.GREEDY.ordinal()]++;
                 }
-                child.calculateCost(cities);
-                if (child.getCost() > tournament[0].getCost()) {
-                    newChromosomes[i] = chromosomes[i];
-                } else if (child.getCost() > tournament[1].getCost()) {
-                    newChromosomes[i] = chromosomes[i];
-                } else {
-                    newChromosomes[i] = child;
+                counts[Operator.GREEDY.ordinal()]++;
+            }
+            if (prob < pm2){
+                if (child.inversionMutate(distances, generator) < 0) {
+                    improvements[Operator.INVERSION.ordinal()]++;
                 }
-                
-                if (!Chromosome.valid(children[0])) {
-                    System.out.println("Woops!!!");
-                } 
+                counts[Operator.INVERSION.ordinal()]++;
             }
+            mark = lap(phases, Metrics.Phase.MUTATION, mark);
+            if (distances.isTimeDependent() && prob < Math.max(pm1, Math.max(pm2, pm3))) {
+                // The mutations price their changes edge by edge, which only
+                // estimates the change in a time-dependent cost
+                child.calculateCost(distances);
+                mark = lap(phases, Metrics.Phase.EVALUATION, mark);
+            }
+            if (refinement == Refinement.OFFSPRING) {
+                refine(child, counts, improvements);
+                mark = lap(phases, Metrics.Phase.MUTATION, mark);
+            }
+            if (checkCost && !child.verifyCost(distances)) {
+                System.out.println("Incremental cost drifted in generation " + generation);
+            }
+            if (!Chromosome.valid(child)) {
+                metrics.invalidTour();
+                System.out.println("Woops!!!");
+            } 
+            mark = lap(phases, Metrics.Phase.EVALUATION, mark);
             
-            
+            // Replacing a losing child counts as selection, with the next tournament
+            if (child.getCost() > tournament[0].getCost()) {
+                child.copyFrom(chromosomes[i]);
+                counts[Operator.REJECT.ordinal()]++;
+            } else if (crossover != Crossover.EAX && child.getCost() > tournament[1].getCost()) {
+                child.copyFrom(chromosomes[i]);
+                counts[Operator.REJECT.ordinal()]++;
+            }
         }
-        
-        Chromosome.sortChromosomes(newChromosomes, populationSize);
-        chromosomes = newChromosomes;
-        
-        /*for (int i = 0; i < populationSize; i++) {
-            if (1.0/newChromosomes[i].getCost() > 1.0/chromosomes[populationSize - 1 - i].getCost()) {
-                chromosomes[populationSize - 1 - i] = newChromosomes[i];
+        lap(phases, Metrics.Phase.SELECTION, mark);
+    }
+
+    /**
+     * Apply the configured local search to a chromosome, within the current
+     * generation's budget.
+     *
+     * @param chromosome   The chromosome to improve in place.
+     * @param counts       Where to count the refinement.
+     * @param improvements Where to count it if it made the tour cheaper.
+     */
+    private void refine(Chromosome chromosome, int[] counts, int[] improvements) {
+        counts[Operator.REFINE.ordinal()]++;
+        double cost = chromosome.getCost();
+        if (linKernighan) {
+            LinKernighan.improve(distances, neighbours, chromosome, localSearchDeadline);
+        } else {
+            LocalSearch.improve(distances, neighbours, chromosome, localSearchDeadline);
+        }
+        if (chromosome.getCost() < cost) {
+            improvements[Operator.REFINE.ordinal()]++;
+        }
+    }
+
+    /**
+     * Fork-join task breeding a range of blocks of the next generation.
+     * Ranges are halved until a single block is left, which is bred with its
+     * own random stream.
+     */
+    private class Breeding extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Chromosome[] newChromosomes;
+        private final int fromBlock;
+        private final int toBlock;
+
+        Breeding(Chromosome[] newChromosomes, int fromBlock, int toBlock) {
+            this.newChromosomes = newChromosomes;
+            this.fromBlock = fromBlock;
+            this.toBlock = toBlock;
+        }
+
+        @Override
+        protected void compute() {
+            if (toBlock - fromBlock <= 1) {
+                breedBlock(newChromosomes, fromBlock);
             } else {
-                break;
+                int mid = (fromBlock + toBlock) >>> 1;
+                invokeAll(new Breeding(newChromosomes, fromBlock, mid), new Breeding(newChromosomes, mid, toBlock));
             }
-        }*/
-        
+        }
     }
 
     /**
-     * Update the display
-     */
-    public static void updateGUI() {
-        Image img = frame.createImage(width, height);
-        Graphics g = img.getGraphics();
-        FontMetrics fm = g.getFontMetrics();
-
-        g.setColor(Color.black);
-        g.fillRect(0, 0, width, height);
-
-        if (true && (cities != null)) {
-            for (int i = 0; i < cityCount; i++) {
-                int xpos = cities[i].getx();
-                int ypos = cities[i].gety();
-                g.setColor(Color.green);
-                g.fillOval(xpos - 5, ypos - 5, 10, 10);
-                
-                //// SHOW Outline of movement boundary
-                // xpos = originalCities[i].getx();
-                // ypos = originalCities[i].gety();
-                // g.setColor(Color.darkGray);
-                // g.drawLine(xpos + cityShiftAmount, ypos, xpos, ypos + cityShiftAmount);
-                // g.drawLine(xpos, ypos + cityShiftAmount, xpos - cityShiftAmount, ypos);
-                // g.drawLine(xpos - cityShiftAmount, ypos, xpos, ypos - cityShiftAmount);
-                // g.drawLine(xpos, ypos - cityShiftAmount, xpos + cityShiftAmount, ypos);
-            }
+     * Recompute every chromosome's cost for the current city positions, so
+     * that the incremental cost updates of the mutations start from a correct
+     * value.
+     */
+    private void evaluatePopulation() {
+        for (Chromosome chromosome : chromosomes) {
+            chromosome.calculateCost(distances);
+        }
+    }
 
-            g.setColor(Color.gray);
-            for (int i = 0; i < cityCount; i++) {
-                int icity = chromosomes[0].getCity(i);
-                if (i != 0) {
-                    int last = chromosomes[0].getCity(i - 1);
-                    g.drawLine(
-                        cities[icity].getx(),
-                        cities[icity].gety(),
-                        cities[last].getx(),
-                        cities[last].gety());
-                }
-            }
-                        
-            int homeCity = chromosomes[0].getCity(0);
-            int lastCity = chromosomes[0].getCity(cityCount - 1);
-                        
-            //Drawing line returning home
-            g.drawLine(
-                    cities[homeCity].getx(),
-                    cities[homeCity].gety(),
-                    cities[lastCity].getx(),
-                    cities[lastCity].gety());
+    /**
+     * Hand the best tour to the display, which draws it when it next can.
+     */
+    public void updateGUI() {
+        view.show(cities, chromosomes[0]);
+    }
+
+    /**
+     * Load the cities of an instance in any of the supported formats: a
+     * binary instance written by CityFile, a TSPLIB file, which also becomes
+     * the instance being solved, or a text file of "x, y" lines. A binary
+     * instance is told apart by its magic number before anything tries to
+     * read it as text.
+     *
+     * @param filename The file.
+     * @return The cities.
+     * @throws IOException If the file cannot be read or is malformed.
+     */
+    static City[] loadCities(String filename) throws IOException {
+        Path path = Paths.get(filename);
+        instance = null;
+        if (!CityFile.isBinary(path) && TsplibInstance.isTsplib(path)) {
+            instance = TsplibInstance.read(path);
+            return instance.getCities();
         }
-        frame.getGraphics().drawImage(img, 0, 0, frame);
+        return LoadCitiesFromFile(filename, null);
     }
 
-    private static City[] LoadCitiesFromFile(String filename, City[] citiesArray) {
+    /**
+     * Load the cities of an instance, either a binary instance written by
+     * CityFile, which is memory-mapped, or a text file with one "x, y" line
+     * per city.
+     *
+     * @param filename The file.
+     * @param citiesArray Unused.
+     * @return The cities.
+     * @throws IOException If the file cannot be read or a line is malformed.
+     */
+    private static City[] LoadCitiesFromFile(String filename, City[] citiesArray) throws IOException {
+        Path path = Paths.get(filename);
+        if (CityFile.isBinary(path)) {
+            return CityFile.open(path).toCities();
+        }
         ArrayList<City> cities = new ArrayList<City>();
-        try 
-        {
-            FileReader inputFile = new FileReader(filename);
-            BufferedReader bufferReader = new BufferedReader(inputFile);
+        try (BufferedReader bufferReader = Files.newBufferedReader(path)) {
             String line;
+            int number = 0;
             while ((line = bufferReader.readLine()) != null) { 
-                String [] coordinates = line.split(", ");
-                cities.add(new City(Integer.parseInt(coordinates[0]), Integer.parseInt(coordinates[1])));
+                number++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                String [] coordinates = line.split(",");
+                try {
+                    cities.add(new City(Integer.parseInt(coordinates[0].trim()), Integer.parseInt(coordinates[1].trim())));
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    throw new IOException(filename + " line " + number + ": expected \"x, y\" but found \"" + line + "\"");
+                }
             }
-
-            bufferReader.close();
-
-        } catch (Exception e) {
-            System.out.println("Error while reading file line by line:" + e.getMessage());                      
         }
-        
+        if (cities.isEmpty()) {
+            throw new IOException(filename + " holds no cities");
+        }
         citiesArray = new City[cities.size()];
         return cities.toArray(citiesArray);
     }
 	/*
      *  Moves a city randomly with some purturbation
      * @param cities is an array of cities with coordinates x and y to be purturbed
+     * @param randomGenerator the random source of the run
      * @returns newPositions an array of updated cities with coordinates having been purturbed.
      */
-    private static City[] MoveCities(City[]cities) {
+    private static City[] MoveCities(City[]cities, RandomSource randomGenerator) {
     	City[] newPositions = new City[cities.length];
-        Random randomGenerator = new Random();
 
         for(int i = 0; i < cities.length; i++) {
         	int x = cities[i].getx();
@@ -299,14 +901,432 @@ public class TSP {
         return newPositions;
     }
 
+    /**
+     * @return One stream for every block of children of a generation.
+     */
+    private static RandomSource[] breedingStreams() {
+        RandomSource[] streams = new RandomSource[(populationSize + breedingGrain - 1) / breedingGrain];
+        for (int block = 0; block < streams.length; block++) {
+            streams[block] = new RandomSource(block);
+        }
+        return streams;
+    }
+
+    /**
+     * @param cityCount The number of cities.
+     * @return An archive of earlier configurations, or null if none are to
+     *         be remembered or the cities never move.
+     */
+    private static EnvironmentArchive archive(int cityCount) {
+        return archiveCapacity > 0 && instance == null ? new EnvironmentArchive(archiveCapacity, cityCount) : null;
+    }
+
+    /**
+     * Create the initial population and start counting generations.
+     */
+    void initialise() {
+        genMin = 0;
+        startTime = System.nanoTime();
+
+        // create the initial population of chromosomes
+        chromosomes = new Chromosome[populationSize];
+        for (int x = 0; x < populationSize; x++) {
+            chromosomes[x] = new Chromosome(distances, neighbours, random);
+        }
+        population = new PopulationStore(chromosomes);
+        chromosomes = population.current();
+
+        generation = 0;
+    }
+
+    /**
+     * Move the cities, starting a new epoch, and bring the distances,
+     * candidate lists and population costs up to date. With an archive, the
+     * best tours of the old configuration are remembered, and those of the
+     * configurations nearest the new one are given a place in the population.
+     * The cities of a TSPLIB instance stay where they are.
+     */
+    void moveCities() {
+        if (instance != null) {
+            return;
+        }
+        City[] positions = MoveCities(originalCities, random); //Move from original cities, so they only move by a maximum of one unit.
+        if (archive != null) {
+            archive.remember(originalCities, cities, chromosomes);
+        }
+        relocate(positions);
+        if (archive != null) {
+            archive.recall(originalCities, cities, distances, chromosomes);
+        }
+    }
+
+    /**
+     * Put the cities in new positions, starting a new epoch. Only the cities
+     * that actually changed position are worked on: their distances are
+     * recomputed, and while they are few, each tour's cost is patched along
+     * the edges that touch them instead of being recomputed. The old edges
+     * are priced from the distances before they are updated and the new ones
+     * after, so the patch holds for whatever metric the distances follow.
+     *
+     * @param positions The new position of every city.
+     */
+    void relocate(City[] positions) {
+        movedCount = 0;
+        for (int i = 0; i < positions.length; i++) {
+            movedMark[i] = positions[i].getx() != cities[i].getx() || positions[i].gety() != cities[i].gety();
+            if (movedMark[i]) {
+                movedCities[movedCount++] = i;
+            }
+        }
+        boolean patch = movedCount * patchFraction <= cities.length && !distances.isTimeDependent();
+        if (patch) {
+            patchCosts(-1);
+        }
+        cities = positions;
+        epoch++;
+        distances.update(cities, movedCities, movedCount, epoch);
+        neighbours.refresh(cities);
+        if (patch) {
+            patchCosts(1);
+        } else {
+            reevaluate();
+        }
+    }
+
+    /**
+     * Add the cost of the edges touching the moved cities to every tour's
+     * cost, or take it away.
+     *
+     * @param sign 1 to add the edges, -1 to take them away.
+     */
+    private void patchCosts(int sign) {
+        long started = System.nanoTime();
+        for (Chromosome chromosome : chromosomes) {
+            chromosome.setCost(chromosome.getCost()
+                    + sign * chromosome.edgesTouching(distances, movedCities, movedCount, movedMark));
+        }
+        metrics.phase(Metrics.Phase.EVALUATION, System.nanoTime() - started);
+    }
+
+    /**
+     * Recompute the population costs in full after a movement.
+     */
+    private void reevaluate() {
+        long started = System.nanoTime();
+        evaluatePopulation();
+        metrics.phase(Metrics.Phase.EVALUATION, System.nanoTime() - started);
+    }
+
+    /**
+     * Take over the city state of a run that has just moved its cities, and
+     * re-evaluate this run's population against it.
+     *
+     * @param environment The run whose city state is shared.
+     */
+    void adopt(TSP environment) {
+        City[] before = cities;
+        if (archive != null) {
+            archive.remember(originalCities, before, chromosomes);
+        }
+        cities = environment.cities;
+        epoch = environment.epoch;
+        distances = environment.distances;
+        neighbours = environment.neighbours;
+        // The shared distances already hold the new positions, so the old
+        // edges can no longer be priced and the costs are recomputed in full
+        reevaluate();
+        if (archive != null) {
+            archive.recall(originalCities, cities, distances, chromosomes);
+        }
+    }
+
+    /**
+     * Move the best chromosome to the front of the population and remember
+     * the lowest cost seen so far.
+     *
+     * @return The cost of the best chromosome.
+     */
+    double record() {
+        long started = System.nanoTime();
+        Ranking.selectBest(chromosomes, populationSize, 1);
+        metrics.phase(Metrics.Phase.SORT, System.nanoTime() - started);
+        double thisCost = chromosomes[0].getCost();
+
+        if (thisCost < genMin || genMin == 0) {
+            genMin = thisCost;
+        }
+        double sum = 0;
+        double worst = 0;
+        for (Chromosome chromosome : chromosomes) {
+            sum += chromosome.getCost();
+            worst = Math.max(worst, chromosome.getCost());
+        }
+        metrics.costs(thisCost, sum / chromosomes.length);
+        if (results != null) {
+            log(sum / chromosomes.length, worst);
+        }
+        return thisCost;
+    }
+
+    /**
+     * Hand the state of the population to the results log.
+     *
+     * @param mean  The mean cost of the population.
+     * @param worst The highest cost in the population.
+     */
+    private void log(double mean, double worst) {
+        long[] operators = new long[Operator.values().length];
+        for (int[] counts : operatorCounts) {
+            for (int i = 0; i < operators.length; i++) {
+                operators[i] += counts[i];
+            }
+        }
+        results.write(new ResultsWriter.Record(runId, islandId, generation, epoch, chromosomes[0].getCost(),
+                mean, worst, operators, (System.nanoTime() - startTime) / 1000000));
+    }
+
+    /**
+     * Name the run for the results log.
+     *
+     * @param run    The run, numbered from 1.
+     * @param island The island within the run, 0 without islands.
+     */
+    void identify(int run, int island) {
+        this.runId = run;
+        this.islandId = island;
+    }
+
+    /**
+     * Hand the best tour to the publisher if it is cheaper than the last tour
+     * published, or if the cities have moved since. Expects record() to have
+     * put the best tour first.
+     */
+    private void publish() {
+        Chromosome best = chromosomes[0];
+        if (epoch != publishedEpoch || best.getCost() < publishedCost) {
+            publisher.publish(best, generation, epoch);
+            publishedEpoch = epoch;
+            publishedCost = best.getCost();
+        }
+    }
+
+    /**
+     * @return The lowest cost seen during this run.
+     */
+    double getGenMin() {
+        return genMin;
+    }
+
+    /**
+     * Evolve a fresh population for the configured number of generations,
+     * or carry on with a restored one.
+     *
+     * @param verbose Whether to report the cost of every generation.
+     * @return The lowest cost found during the run.
+     */
+    double run(boolean verbose) {
+        if (chromosomes == null) {
+            initialise();
+        }
+
+        // A live feed keeps the run going, between batches of movements, until it ends
+        while (feed != null ? !feed.isFinished() : generation < generations) {
+            evolve();
+            if (feed != null) {
+                City[] positions = feed.drain(cities);
+                if (positions != null) {
+                    relocate(positions);
+                }
+            } else if(generation % cityMoveInterval == 0 ) {
+                moveCities();
+            }
+            generation++;
+
+            double thisCost = record();
+            if (publisher != null) {
+                publish();
+            }
+
+            if (verbose) {
+                print(display, "Gen: " + generation + " Cost: " + (int) thisCost);
+            }
+
+            if(display) {
+                updateGUI();
+            }
+
+            if (checkpoints != null && generation % checkpointInterval == 0) {
+                checkpoint();
+            }
+        }
+
+        return genMin;
+    }
+
+    /**
+     * Copy the state of the run into a free checkpoint and hand it to the
+     * writer, or skip this checkpoint if the writer is still busy with the
+     * previous ones. Expects record() to have been called.
+     */
+    private void checkpoint() {
+        Checkpoint checkpoint = checkpoints.take();
+        if (checkpoint == null) {
+            return;
+        }
+        checkpoint.seed = seed;
+        checkpoint.generation = generation;
+        checkpoint.epoch = epoch;
+        checkpoint.lowestCost = genMin;
+        checkpoint.random = random.getState();
+        for (int i = 0; i < cities.length; i++) {
+            checkpoint.originalXs[i] = originalCities[i].getx();
+            checkpoint.originalYs[i] = originalCities[i].gety();
+            checkpoint.xs[i] = cities[i].getx();
+            checkpoint.ys[i] = cities[i].gety();
+        }
+        for (int p = 0; p < chromosomes.length; p++) {
+            checkpoint.costs[p] = chromosomes[p].getCost();
+            chromosomes[p].copyCities(checkpoint.tours[p]);
+        }
+        checkpoints.submit(checkpoint);
+    }
+
+    /**
+     * Take over the state of a checkpointed run in place of initialise(), so
+     * the run carries on exactly as it would have. The cities are moved to
+     * their checkpointed positions, and the population is restored in its
+     * checkpointed order with its checkpointed costs.
+     *
+     * @param checkpoint The checkpoint, taken on the same cities.
+     */
+    void restore(Checkpoint checkpoint) {
+        random.setState(checkpoint.random);
+        City[] positions = checkpoint.cities();
+        movedCount = 0;
+        for (int i = 0; i < positions.length; i++) {
+            movedMark[i] = positions[i].getx() != cities[i].getx() || positions[i].gety() != cities[i].gety();
+            if (movedMark[i]) {
+                movedCities[movedCount++] = i;
+            }
+        }
+        cities = positions;
+        epoch = checkpoint.epoch;
+        distances.update(cities, movedCities, movedCount, epoch);
+        if (movedCount > 0) {
+            // Only cities from a city list move, and their lists follow them
+            neighbours.refresh(cities);
+        }
+
+        chromosomes = new Chromosome[checkpoint.populationSize];
+        for (int p = 0; p < chromosomes.length; p++) {
+            chromosomes[p] = new Chromosome(checkpoint.tours[p]);
+            chromosomes[p].setCities(checkpoint.tours[p]);
+            chromosomes[p].setCost(checkpoint.costs[p]);
+        }
+        population = new PopulationStore(chromosomes);
+        chromosomes = population.current();
+        genMin = checkpoint.lowestCost;
+        generation = checkpoint.generation;
+        startTime = System.nanoTime();
+    }
+
+    /**
+     * Evolve one run, as a single population or as an island model.
+     *
+     * @param cities  The cities in their unmoved positions.
+     * @param random  The random source of the run.
+     * @param run     The run, numbered from 1.
+     * @param verbose Whether to report progress during the run.
+     * @return The lowest cost found during the run.
+     */
+    private static double evolveRun(City[] cities, RandomSource random, int run, boolean verbose)
+            throws InterruptedException, ExecutionException {
+        if (islands > 1) {
+            return new IslandModel(cities, random, run, islands, migrationInterval, topology).run(verbose);
+        }
+        TSP tsp = new TSP(cities, random);
+        tsp.identify(run, 0);
+        if (resume != null) {
+            tsp.restore(resume);
+        }
+        return tsp.run(verbose);
+    }
+
+    /**
+     * Evolve independent runs on a bounded thread pool. The results are
+     * logged and printed in run order, whichever run finishes first.
+     *
+     * @param cities  The cities in their unmoved positions.
+     * @param streams The random source of each run.
+     * @return The lowest cost found by each run.
+     */
+    private static double[] runConcurrently(final City[] cities, RandomSource[] streams)
+            throws InterruptedException, ExecutionException {
+        int runs = streams.length;
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, runs));
+        try {
+            List<Future<Double>> futures = new ArrayList<Future<Double>>();
+            for (int y = 1; y <= runs; y++) {
+                RandomSource stream = streams[y - 1];
+                int run = y;
+                futures.add(pool.submit(() -> evolveRun(cities, stream, run, false)));
+            }
+
+            double[] lowestCosts = new double[runs];
+            for (int y = 1; y <= runs; y++) {
+                lowestCosts[y - 1] = futures.get(y - 1).get();
+                writeLog(lowestCosts[y - 1] + "");
+                print(display, "Run " + y + ": " + lowestCosts[y - 1]);
+            }
+            return lowestCosts;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * @param a Some cities.
+     * @param b Some other cities.
+     * @return Whether both hold the same positions in the same order.
+     */
+    private static boolean samePositions(City[] a, City[] b) {
+        if (a.length != b.length) {
+            return false;
+        }
+        for (int i = 0; i < a.length; i++) {
+            if (a[i].getx() != b[i].getx() || a[i].gety() != b[i].gety()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param arg  A command line argument.
+     * @param name The name of an option.
+     * @return The value of the argument if it is -name=value, otherwise null.
+     */
+    private static String option(String arg, String name) {
+        String prefix = "-" + name + "=";
+        return arg.startsWith(prefix) ? arg.substring(prefix.length()) : null;
+    }
+
     public static void main(String[] args) {
         DateFormat df = new SimpleDateFormat("MM-dd-yyyy HH:mm:ss");
         Date today = Calendar.getInstance().getTime();
         String currentTime  = df.format(today);
 
         int runs;
-        boolean display = false;
-        String formatMessage = "Usage: java TSP 1 [gui] \n java TSP [Runs] [gui]";
+        String cityFile = "CityList.txt";
+        String trafficFile = null;
+        String logFile = null;
+        ResultsWriter.Format logFormat = null;
+        String feedSource = null;
+        String publishTarget = null;
+        int metricsPort = 0;
+        String checkpointFile = null;
+        String resumeFile = null;
+        String formatMessage = "Usage: java TSP 1 [gui] \n java TSP [Runs] [gui] [-cities=PATH] [-traffic=PATH] [-seed=N] [-threads=N] [-workers=N] [-islands=N] [-migration=K] [-topology=ring|full] [-crossover=sequential|eax] [-localsearch=none|elite|offspring] [-lsbudget=MS] [-improver=2opt|lk] [-solver=ga|lk] [-feed=PATH|-|tcp:PORT] [-publish=PATH|-] [-log=PATH] [-logformat=csv|jsonl] [-metrics=PORT] [-checkpoint=PATH] [-checkpointevery=K] [-resume=PATH] [-archive=N]";
 
         if (args.length < 1) {
             System.out.println("Please enter the arguments");
@@ -314,31 +1334,99 @@ public class TSP {
             display = false;
         } else {
 
-            if (args.length > 1) {
-                display = true; 
-            }
-
             try {
                 cityCount = 50;
                 populationSize = 100;
                 runs = Integer.parseInt(args[0]);
 
+                for (int a = 1; a < args.length; a++) {
+                    String value;
+                    if ((value = option(args[a], "seed")) != null) {
+                        seed = Long.parseLong(value);
+                    } else if ((value = option(args[a], "threads")) != null) {
+                        threads = Math.max(1, Integer.parseInt(value));
+                    } else if ((value = option(args[a], "workers")) != null) {
+                        int workers = Integer.parseInt(value);
+                        breedingPool = workers > 1 ? new ForkJoinPool(workers) : null;
+                    } else if ((value = option(args[a], "islands")) != null) {
+                        islands = Math.max(1, Integer.parseInt(value));
+                    } else if ((value = option(args[a], "migration")) != null) {
+                        migrationInterval = Math.max(1, Integer.parseInt(value));
+                    } else if ((value = option(args[a], "topology")) != null) {
+                        topology = IslandModel.Topology.valueOf(value.toUpperCase());
+                    } else if ((value = option(args[a], "crossover")) != null) {
+                        crossover = Crossover.valueOf(value.toUpperCase());
+                    } else if ((value = option(args[a], "localsearch")) != null) {
+                        refinement = Refinement.valueOf(value.toUpperCase());
+                    } else if ((value = option(args[a], "lsbudget")) != null) {
+                        localSearchBudget = Math.max(0, Long.parseLong(value));
+                    } else if ((value = option(args[a], "improver")) != null) {
+                        linKernighan = value.equalsIgnoreCase("lk");
+                        if (!linKernighan && !value.equalsIgnoreCase("2opt")) {
+                            throw new IllegalArgumentException("Unknown improver " + value);
+                        }
+                    } else if ((value = option(args[a], "solver")) != null) {
+                        solver = Solver.valueOf(value.toUpperCase());
+                    } else if ((value = option(args[a], "cities")) != null) {
+                        cityFile = value;
+                    } else if ((value = option(args[a], "traffic")) != null) {
+                        trafficFile = value;
+                    } else if ((value = option(args[a], "log")) != null) {
+                        logFile = value;
+                    } else if ((value = option(args[a], "logformat")) != null) {
+                        logFormat = ResultsWriter.Format.valueOf(value.toUpperCase());
+                    } else if ((value = option(args[a], "feed")) != null) {
+                        feedSource = value;
+                    } else if ((value = option(args[a], "publish")) != null) {
+                        publishTarget = value;
+                    } else if ((value = option(args[a], "metrics")) != null) {
+                        metricsPort = Integer.parseInt(value);
+                    } else if ((value = option(args[a], "checkpoint")) != null) {
+                        checkpointFile = value;
+                    } else if ((value = option(args[a], "checkpointevery")) != null) {
+                        checkpointInterval = Math.max(1, Integer.parseInt(value));
+                    } else if ((value = option(args[a], "resume")) != null) {
+                        resumeFile = value;
+                    } else if ((value = option(args[a], "archive")) != null) {
+                        archiveCapacity = Math.max(0, Integer.parseInt(value));
+                    } else {
+                        display = true;
+                    }
+                }
+
+                PrintStream standardOutput = System.out;
+                if ("-".equals(publishTarget)) {
+                    // Standard output carries the tours alone, so a consumer can
+                    // parse it; progress and messages go to standard error
+                    System.setOut(System.err);
+                }
+
+                if ((feedSource != null || publishTarget != null || checkpointFile != null || resumeFile != null)
+                        && (runs > 1 || islands > 1)) {
+                    System.out.println("A movement feed, tour publishing and checkpoints limit the solver to one run with one population");
+                    runs = 1;
+                    islands = 1;
+                }
+
+                if (display && (threads > 1 || islands > 1)) {
+                    System.out.println("The display is only available for sequential, single population runs");
+                    display = false;
+                }
+
                 if(display) {
                     frame = new JFrame("Traveling Salesman");
-                    statsArea = new Panel();
 
                     frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-                    frame.pack();
-                    frame.setSize(width + 300, height);
-                    frame.setResizable(false);
                     frame.setLayout(new BorderLayout());
                     
-                    statsText = new TextArea(35, 35);
-                    statsText.setEditable(false);
+                    view = new TourView(width, height);
+                    frame.add(view, BorderLayout.CENTER);
 
-                    statsArea.add(statsText);
-                    frame.add(statsArea, BorderLayout.EAST);
+                    console = new ConsoleLog(35, 35);
+                    frame.add(console.getComponent(), BorderLayout.EAST);
                     
+                    frame.pack();
+                    frame.setResizable(false);
                     frame.setVisible(true);
                 }
 
@@ -348,49 +1436,74 @@ public class TSP {
                 max = 0;
                 sum = 0;
 
-                originalCities = cities = LoadCitiesFromFile("CityList.txt", cities);
-
-                writeLog("Run Stats for experiment at: " + currentTime);
-                for (int y = 1; y <= runs; y++) {
-                    genMin = 0;
-                    print(display,  "Run " + y + "\n");
-
-                // create the initial population of chromosomes
-                    chromosomes = new Chromosome[populationSize];
-                    for (int x = 0; x < populationSize; x++) {
-                        chromosomes[x] = new Chromosome(cities);
+                City[] cities = loadCities(cityFile);
+                if (instance != null) {
+                    print(display, "Instance: " + instance.getName());
+                    if (feedSource != null) {
+                        throw new IOException("the cities of a TSPLIB instance cannot be moved by a feed");
                     }
+                }
+                cityCount = cities.length;
+                if (trafficFile != null) {
+                    travelTimes = TravelTimes.read(Paths.get(trafficFile), cities.length);
+                }
+                if (feedSource != null) {
+                    feed = MovementFeed.open(feedSource, cities.length);
+                }
+                if (publishTarget != null) {
+                    publisher = TourPublisher.open(publishTarget, standardOutput);
+                }
+                if (resumeFile != null) {
+                    resume = Checkpoint.read(Paths.get(resumeFile));
+                    if (resume.populationSize != populationSize || !samePositions(resume.originalCities(), cities)) {
+                        throw new IOException(resumeFile + " was not taken on these cities");
+                    }
+                    seed = resume.seed;
+                    print(display, "Resuming from generation " + resume.generation);
+                    if (archiveCapacity > 0) {
+                        print(display, "The archive of earlier configurations is not checkpointed, and starts out empty");
+                    }
+                }
+                if (checkpointFile != null) {
+                    checkpoints = new CheckpointWriter(Paths.get(checkpointFile), cities.length, populationSize);
+                }
+                if (logFile != null) {
+                    if (logFormat == null) {
+                        logFormat = logFile.endsWith(".jsonl") || logFile.endsWith(".json")
+                                ? ResultsWriter.Format.JSONL : ResultsWriter.Format.CSV;
+                    }
+                    results = ResultsWriter.open(Paths.get(logFile), logFormat);
+                }
+                metrics.register();
+                if (metricsPort > 0) {
+                    metrics.serve(metricsPort);
+                    print(display, "Metrics: http://localhost:" + metricsPort + "/metrics");
+                }
 
-                    generation = 0;
-                    double thisCost = 0.0;
-
-                    while (generation < 100) {
-                        evolve();
-                        if(generation % 5 == 0 ) 
-                            cities = MoveCities(originalCities); //Move from original cities, so they only move by a maximum of one unit.
-                        generation++;
-
-                        Chromosome.sortChromosomes(chromosomes, populationSize);
-                        double cost = chromosomes[0].getCost();
-                        thisCost = cost;
-
-                        if (thisCost < genMin || genMin == 0) {
-                            genMin = thisCost;
-                        }
-                        
-                        NumberFormat nf = NumberFormat.getInstance();
-                        nf.setMinimumFractionDigits(2);
-                        nf.setMinimumFractionDigits(2);
-
-                        print(display, "Gen: " + generation + " Cost: " + (int) thisCost);
+                // Split every run's stream up front, so each run gets the same
+                // stream whether the runs are sequential or concurrent
+                RandomSource master = new RandomSource(seed);
+                RandomSource[] streams = new RandomSource[runs];
+                for (int y = 0; y < runs; y++) {
+                    streams[y] = master.split();
+                }
+                print(display, "Seed: " + seed);
 
-                        if(display) {
-                            updateGUI();
-                        }
+                writeLog("Run Stats for experiment at: " + currentTime);
+                double[] lowestCosts;
+                if (threads > 1) {
+                    lowestCosts = runConcurrently(cities, streams);
+                } else {
+                    lowestCosts = new double[runs];
+                    for (int y = 1; y <= runs; y++) {
+                        print(display,  "Run " + y + "\n");
+                        lowestCosts[y - 1] = evolveRun(cities, streams[y - 1], y, true);
+                        writeLog(lowestCosts[y - 1] + "");
+                        print(display, "");
                     }
+                }
 
-                    writeLog(genMin + "");
-
+                for (double genMin : lowestCosts) {
                     if (genMin > max) {
                         max = genMin;
                     }
@@ -400,20 +1513,44 @@ public class TSP {
                     }
 
                     sum +=  genMin;
-
-                    print(display, "");
                 }
 
                 avg = sum / runs;
                 print(display, "Statistics after " + runs + " runs");
-                print(display, "Solution found after " + generation + " generations." + "\n");
+                print(display, "Solution found after " + generations + " generations." + "\n");
                 print(display, "Statistics of minimum cost from each run \n");
                 print(display, "Lowest: " + min + "\nAverage: " + avg + "\nHighest: " + max + "\n");
 
             } catch (NumberFormatException e) {
                 System.out.println("Please ensure you enter integers for cities and population size");
                 System.out.println(formatMessage);
+            } catch (IllegalArgumentException e) {
+                System.out.println("Unrecognised option value: " + e.getMessage());
+                System.out.println(formatMessage);
+            } catch (InterruptedException | ExecutionException e) {
+                System.out.println("A run failed: " + e.getMessage());
+                e.printStackTrace();
+            } catch (IOException e) {
+                System.out.println("Could not read the cities or a checkpoint, or open a feed, tour destination or metrics port: " + e.getMessage());
+            } finally {
+                metrics.close();
+                try {
+                    if (feed != null) {
+                        feed.close();
+                    }
+                    if (publisher != null) {
+                        publisher.close();
+                    }
+                    if (results != null) {
+                        results.close();
+                    }
+                    if (checkpoints != null) {
+                        checkpoints.close();
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,158 @@
+/**
+ * The part LocalSearch and LinKernighan share: a tour improved in place with
+ * a position index kept alongside, and the queue of active cities that
+ * drives the search with don't-look bits.
+ *
+ * Every city starts out active, in the queue. An active city is taken off
+ * the queue and handed to improveCity(); a move that improves the tour
+ * queues the city again, along with the cities at the ends of the edges it
+ * changed. A city with no improving move stays off the queue until a later
+ * move touches it. The search stops when the queue runs dry or the deadline
+ * passes. Each thread has its own improver with its own arrays.
+ */
+abstract class TourImprover {
+
+    /**
+     * How many cities are processed between checks of the clock.
+     */
+    private static final int clockInterval = 16;
+
+    /**
+     * The deadline meaning the search runs until no move improves.
+     */
+    static final long noDeadline = Long.MAX_VALUE;
+
+    /**
+     * The tours array holding the tour being improved, the slice of n
+     * cities from offset, and the position of every city in the tour.
+     */
+    int[] tour;
+    int offset;
+    int n;
+    int[] position = new int[0];
+
+    DistanceMatrix distances;
+    CandidateLists neighbours;
+
+    /**
+     * The queue of active cities, and which cities are on it.
+     */
+    private int[] queue = new int[0];
+    private boolean[] queued = new boolean[0];
+    private int head;
+    private int size;
+
+    /**
+     * Improve a chromosome in place until no move improves it, or the
+     * deadline passes. Its cost is updated. Tours of asymmetric instances are
+     * left alone, as the moves reverse parts of the tour.
+     *
+     * @param distances  The distances between the cities.
+     * @param neighbours The candidate lists of the cities.
+     * @param chromosome The chromosome to improve.
+     * @param deadline   The System.nanoTime() after which to stop, or
+     *                   noDeadline.
+     * @return The change in cost, zero or negative.
+     */
+    final double improveTour(DistanceMatrix distances, CandidateLists neighbours, Chromosome chromosome, long deadline) {
+        if (!distances.isSymmetric() || chromosome.n < 8) {
+            return 0;
+        }
+        long delta = run(distances, neighbours, chromosome, deadline);
+        chromosome.setCost(chromosome.getCost() + delta);
+        return delta;
+    }
+
+    private long run(DistanceMatrix distances, CandidateLists neighbours, Chromosome chromosome, long deadline) {
+        this.distances = distances;
+        this.neighbours = neighbours;
+        this.tour = chromosome.tours;
+        this.offset = chromosome.offset;
+        this.n = chromosome.n;
+        if (position.length < n) {
+            position = new int[n];
+            queue = new int[n];
+            queued = new boolean[n];
+        }
+        head = 0;
+        size = 0;
+        for (int i = 0; i < n; i++) {
+            position[tour[offset + i]] = i;
+            push(tour[offset + i]);
+        }
+        start();
+
+        long delta = 0;
+        int processed = 0;
+        while (size > 0) {
+            if (deadline != noDeadline && ++processed % clockInterval == 0 && System.nanoTime() - deadline > 0) {
+                break;
+            }
+            int city = queue[head];
+            head = (head + 1) % n;
+            size--;
+            queued[city] = false;
+            long gain = improveCity(city);
+            if (gain < 0) {
+                delta += gain;
+                push(city);
+            }
+        }
+        // Leave the marks clear for the next search
+        while (size > 0) {
+            queued[queue[head]] = false;
+            head = (head + 1) % n;
+            size--;
+        }
+        this.tour = null;
+        return delta;
+    }
+
+    /**
+     * Called once the tour and its position index are set up, before the
+     * first city is improved.
+     */
+    void start() {
+    }
+
+    /**
+     * Apply an improving move around a city, queueing the cities it touches.
+     *
+     * @param city The active city taken off the queue.
+     * @return The change in cost, negative, or zero if there was no move.
+     */
+    abstract long improveCity(int city);
+
+    /**
+     * Make a city active, unless it already is.
+     */
+    final void push(int city) {
+        if (!queued[city]) {
+            queued[city] = true;
+            queue[(head + size) % n] = city;
+            size++;
+        }
+    }
+
+    /**
+     * Reverse the tour from position i forward to position j, wrapping
+     * around the end.
+     */
+    final void reverseRange(int i, int j) {
+        int length = j - i;
+        if (length < 0) {
+            length += n;
+        }
+        length++;
+        for (int k = 0; k < length / 2; k++) {
+            int cityI = tour[offset + i];
+            int cityJ = tour[offset + j];
+            tour[offset + i] = cityJ;
+            position[cityJ] = i;
+            tour[offset + j] = cityI;
+            position[cityI] = j;
+            i = i + 1 == n ? 0 : i + 1;
+            j = j == 0 ? n - 1 : j - 1;
+        }
+    }
+}
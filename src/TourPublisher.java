@@ -0,0 +1,157 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Publishes the best tour of a run as it improves (anytime output). The
+ * solver hands tours over without waiting: a background thread writes them.
+ * Only the latest tour is kept, so if the consumer falls behind, tours it has
+ * not been sent yet are replaced by newer ones rather than queued.
+ *
+ * Each tour is one line: "generation epoch cost city city ...".
+ */
+class TourPublisher implements Closeable {
+
+    private final Writer out;
+
+    /**
+     * Whether out is standard output, which is flushed but never closed.
+     */
+    private final boolean standardOutput;
+
+    /**
+     * The latest tour handed over and not yet written, if hasPending.
+     */
+    private int[] pendingTour = new int[0];
+    private double pendingCost;
+    private int pendingGeneration;
+    private int pendingEpoch;
+    private boolean hasPending;
+
+    private boolean closed;
+
+    /**
+     * The tour being written, traded with pendingTour so neither is
+     * reallocated.
+     */
+    private int[] writingTour = new int[0];
+
+    private final Thread writer;
+
+    private TourPublisher(Writer out, boolean standardOutput) {
+        this.out = out;
+        this.standardOutput = standardOutput;
+        this.writer = new Thread(this::write, "tour-publisher");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * @param spec           A path to append tours to, such as a named pipe,
+     *                       or "-" for standard output.
+     * @param standardOutput Standard output, which nothing but the tours
+     *                       should be printed to when spec is "-".
+     * @return A publisher writing to it.
+     * @throws IOException If the destination cannot be opened.
+     */
+    static TourPublisher open(String spec, OutputStream standardOutput) throws IOException {
+        if (spec.equals("-")) {
+            return new TourPublisher(new BufferedWriter(new OutputStreamWriter(standardOutput, StandardCharsets.UTF_8)), true);
+        }
+        return new TourPublisher(new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(spec, true), StandardCharsets.UTF_8)), false);
+    }
+
+    /**
+     * Hand over a tour to be written, replacing any tour not yet written.
+     *
+     * @param best       The tour.
+     * @param generation The generation it was found in.
+     * @param epoch      The city configuration its cost belongs to.
+     */
+    synchronized void publish(Chromosome best, int generation, int epoch) {
+        if (closed) {
+            return;
+        }
+        if (pendingTour.length != best.n) {
+            pendingTour = new int[best.n];
+        }
+        best.copyCities(pendingTour);
+        pendingCost = best.getCost();
+        pendingGeneration = generation;
+        pendingEpoch = epoch;
+        hasPending = true;
+        notifyAll();
+    }
+
+    private void write() {
+        StringBuilder line = new StringBuilder();
+        while (true) {
+            double cost;
+            int generation;
+            int epoch;
+            synchronized (this) {
+                while (!hasPending && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!hasPending) {
+                    return;
+                }
+                int[] temp = writingTour;
+                writingTour = pendingTour;
+                pendingTour = temp;
+                cost = pendingCost;
+                generation = pendingGeneration;
+                epoch = pendingEpoch;
+                hasPending = false;
+            }
+
+            line.setLength(0);
+            line.append(generation).append(' ').append(epoch).append(' ').append((long) cost);
+            for (int city : writingTour) {
+                line.append(' ').append(city);
+            }
+            line.append('\n');
+            try {
+                out.write(line.toString());
+                out.flush();
+            } catch (IOException e) {
+                System.out.println("Publishing the best tour failed: " + e.getMessage());
+                synchronized (this) {
+                    closed = true;
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Write the last tour handed over, then release the destination.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (standardOutput) {
+            out.flush();
+        } else {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,432 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * Draws tours into an image, at a level of detail that suits the instance.
+ *
+ * Up to detailLimit cities, every city is drawn as a dot and every edge as
+ * a line, the whole image each time. Beyond that, cities are binned into a
+ * density raster, one count per pixel, shaded by how many cities each pixel
+ * holds, and the tour is drawn at pixel resolution: each edge runs between
+ * the pixels of its cities, so edges within a pixel vanish, and lines are
+ * rasterised straight into the image's pixels.
+ *
+ * Large tours are also redrawn incrementally. The image is divided into
+ * tiles, and only tiles touched by edges that left or joined the tour, or
+ * by cities that moved, are repainted from the raster and the current
+ * edges. As every edge is drawn the same way whatever else changed, the
+ * tiles left alone are exactly what a full redraw would give.
+ */
+class TourRaster {
+
+    /**
+     * The most cities drawn in full detail.
+     */
+    private static final int detailLimit = 2000;
+
+    /**
+     * The size of a tile, as a power of two.
+     */
+    private static final int tileShift = 5;
+
+    /**
+     * The gap left around the cities when they have to be scaled to fit.
+     */
+    private static final int margin = 10;
+
+    /**
+     * Cities are shaded in green, and tour edges add red and blue, so the
+     * density still shows under the tour.
+     */
+    private static final int background = 0x000000;
+    private static final int edgeColour = 0x800080;
+
+    private final BufferedImage image;
+    private final int[] pixels;
+    private final int width;
+    private final int height;
+    private final int tilesX;
+    private final boolean[] dirty;
+    private int dirtyCount;
+
+    /**
+     * Maps city coordinates to pixels: x' = (x - originX) * scale.
+     */
+    private double scale;
+    private double originX;
+    private double originY;
+
+    /**
+     * The state drawn last: the cities, their pixels, how many cities each
+     * pixel holds, and each city's neighbours in the tour.
+     */
+    private City[] shownCities;
+    private int[] pixelX;
+    private int[] pixelY;
+    private int[] density;
+    private int maxDensity;
+
+    /**
+     * The colour of a pixel holding each number of cities, up to the most
+     * any pixel holds.
+     */
+    private int[] shades = new int[0];
+    private int[] next;
+    private int[] previous;
+
+    /**
+     * The new pixels of the cities that moved, while moving them.
+     */
+    private int[] moved;
+    private int[] movedX;
+    private int[] movedY;
+
+    /**
+     * The neighbours in the tour being drawn.
+     */
+    private int[] nextNext;
+    private int[] nextPrevious;
+
+    /**
+     * @param image The image to draw into, of TYPE_INT_RGB.
+     */
+    TourRaster(BufferedImage image) {
+        this.image = image;
+        this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        this.tilesX = ((width - 1) >> tileShift) + 1;
+        this.dirty = new boolean[tilesX * (((height - 1) >> tileShift) + 1)];
+    }
+
+    /**
+     * Draw a tour, over whatever was drawn before.
+     *
+     * @param cities The city positions.
+     * @param tour   The cities in the order visited.
+     * @return The part of the image that changed, or null if none did.
+     */
+    Rectangle draw(City[] cities, int[] tour) {
+        // The cities are replaced, never changed, when they move
+        boolean refit = shownCities == null || shownCities.length != cities.length
+                || (cities != shownCities && !fits(cities));
+        if (refit) {
+            fit(cities);
+        }
+        if (cities.length <= detailLimit) {
+            shownCities = cities;
+            drawDetailed(cities, tour);
+            return new Rectangle(0, 0, width, height);
+        }
+        if (refit) {
+            reset(cities);
+        }
+        return drawIncrementally(cities, tour);
+    }
+
+    /**
+     * @return Whether every city lands on the image with the current mapping.
+     */
+    private boolean fits(City[] cities) {
+        for (City city : cities) {
+            double x = (city.getx() - originX) * scale;
+            double y = (city.gety() - originY) * scale;
+            if (x < 0 || x >= width || y < 0 || y >= height) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Choose the mapping from cities to pixels: as they are if they already
+     * fit on the image, as the city list does, otherwise scaled to fit with
+     * room to move.
+     */
+    private void fit(City[] cities) {
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (City city : cities) {
+            minX = Math.min(minX, city.getx());
+            minY = Math.min(minY, city.gety());
+            maxX = Math.max(maxX, city.getx());
+            maxY = Math.max(maxY, city.gety());
+        }
+        if (minX >= 0 && minY >= 0 && maxX < width && maxY < height) {
+            scale = 1;
+            originX = 0;
+            originY = 0;
+            return;
+        }
+        scale = Math.min((width - 1 - 4 * margin) / Math.max(1.0, maxX - minX),
+                (height - 1 - 4 * margin) / Math.max(1.0, maxY - minY));
+        originX = minX - 2 * margin / scale;
+        originY = minY - 2 * margin / scale;
+    }
+
+    private int toPixelX(City city) {
+        return Math.min(width - 1, Math.max(0, (int) ((city.getx() - originX) * scale)));
+    }
+
+    private int toPixelY(City city) {
+        return Math.min(height - 1, Math.max(0, (int) ((city.gety() - originY) * scale)));
+    }
+
+    private void drawDetailed(City[] cities, int[] tour) {
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setColor(Color.black);
+            g.fillRect(0, 0, width, height);
+
+            g.setColor(Color.green);
+            for (City city : cities) {
+                g.fillOval(toPixelX(city) - 5, toPixelY(city) - 5, 10, 10);
+            }
+
+            // The tour, including the edge back home
+            g.setColor(Color.gray);
+            City last = cities[tour[tour.length - 1]];
+            for (int city : tour) {
+                City next = cities[city];
+                g.drawLine(toPixelX(last), toPixelY(last), toPixelX(next), toPixelY(next));
+                last = next;
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * Forget what was drawn, so the next tour is drawn in full.
+     */
+    private void reset(City[] cities) {
+        int n = cities.length;
+        shownCities = cities;
+        pixelX = new int[n];
+        pixelY = new int[n];
+        density = new int[width * height];
+        next = null;
+        previous = new int[n];
+        nextNext = new int[n];
+        nextPrevious = new int[n];
+        moved = new int[n];
+        movedX = new int[n];
+        movedY = new int[n];
+        for (int i = 0; i < n; i++) {
+            pixelX[i] = toPixelX(cities[i]);
+            pixelY[i] = toPixelY(cities[i]);
+            density[pixelY[i] * width + pixelX[i]]++;
+        }
+        maxDensity = 0;
+        for (int count : density) {
+            maxDensity = Math.max(maxDensity, count);
+        }
+    }
+
+    private Rectangle drawIncrementally(City[] cities, int[] tour) {
+        int n = tour.length;
+        for (int k = 0; k < n; k++) {
+            int city = tour[k];
+            nextNext[city] = tour[k + 1 == n ? 0 : k + 1];
+            nextPrevious[city] = tour[k == 0 ? n - 1 : k - 1];
+        }
+
+        if (next == null) {
+            Arrays.fill(dirty, true);
+            dirtyCount = dirty.length;
+        } else {
+            // Edges that left the tour, where they were drawn
+            for (int a = 0; a < n; a++) {
+                int b = next[a];
+                if (nextNext[a] != b && nextPrevious[a] != b) {
+                    markEdge(a, b);
+                }
+            }
+            if (cities != shownCities) {
+                moveCities(cities);
+            }
+            // Edges that joined the tour, where they will be drawn
+            for (int a = 0; a < n; a++) {
+                int b = nextNext[a];
+                if (next[a] != b && previous[a] != b) {
+                    markEdge(a, b);
+                }
+            }
+        }
+        int[] swap = next;
+        next = nextNext;
+        nextNext = swap == null ? new int[n] : swap;
+        swap = previous;
+        previous = nextPrevious;
+        nextPrevious = swap;
+
+        if (dirtyCount == 0) {
+            return null;
+        }
+        Rectangle changed = repaintTiles();
+        Arrays.fill(dirty, false);
+        dirtyCount = 0;
+        return changed;
+    }
+
+    /**
+     * Bring the pixels and density of the cities up to date, marking where
+     * cities and the edges touching them were and are. Should the busiest
+     * pixel get busier, the shading changes everywhere.
+     */
+    private void moveCities(City[] cities) {
+        int count = 0;
+        for (int i = 0; i < cities.length; i++) {
+            int x = toPixelX(cities[i]);
+            int y = toPixelY(cities[i]);
+            if (x != pixelX[i] || y != pixelY[i]) {
+                moved[count] = i;
+                movedX[count] = x;
+                movedY[count] = y;
+                count++;
+                markEdge(previous[i], i);
+                markEdge(i, next[i]);
+            }
+        }
+        int busiest = maxDensity;
+        for (int k = 0; k < count; k++) {
+            int i = moved[k];
+            density[pixelY[i] * width + pixelX[i]]--;
+            pixelX[i] = movedX[k];
+            pixelY[i] = movedY[k];
+            maxDensity = Math.max(maxDensity, ++density[pixelY[i] * width + pixelX[i]]);
+        }
+        for (int k = 0; k < count; k++) {
+            int i = moved[k];
+            markEdge(nextPrevious[i], i);
+            markEdge(i, nextNext[i]);
+        }
+        if (maxDensity != busiest) {
+            Arrays.fill(dirty, true);
+            dirtyCount = dirty.length;
+        }
+        shownCities = cities;
+    }
+
+    /**
+     * Mark the tiles under the bounding box of an edge.
+     */
+    private void markEdge(int a, int b) {
+        int fromX = Math.min(pixelX[a], pixelX[b]) >> tileShift;
+        int toX = Math.max(pixelX[a], pixelX[b]) >> tileShift;
+        int fromY = Math.min(pixelY[a], pixelY[b]) >> tileShift;
+        int toY = Math.max(pixelY[a], pixelY[b]) >> tileShift;
+        for (int ty = fromY; ty <= toY; ty++) {
+            for (int tx = fromX; tx <= toX; tx++) {
+                int tile = ty * tilesX + tx;
+                if (!dirty[tile]) {
+                    dirty[tile] = true;
+                    dirtyCount++;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Whether any tile under the bounding box of an edge is marked.
+     */
+    private boolean touchesDirty(int a, int b) {
+        int fromX = Math.min(pixelX[a], pixelX[b]) >> tileShift;
+        int toX = Math.max(pixelX[a], pixelX[b]) >> tileShift;
+        int fromY = Math.min(pixelY[a], pixelY[b]) >> tileShift;
+        int toY = Math.max(pixelY[a], pixelY[b]) >> tileShift;
+        for (int ty = fromY; ty <= toY; ty++) {
+            for (int tx = fromX; tx <= toX; tx++) {
+                if (dirty[ty * tilesX + tx]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Repaint the marked tiles: the density raster, then every edge that
+     * crosses them.
+     *
+     * @return The bounds of the marked tiles.
+     */
+    private Rectangle repaintTiles() {
+        if (shades.length != maxDensity + 1) {
+            // Shaded on a log scale, so sparse pixels stay visible next to dense ones
+            shades = new int[maxDensity + 1];
+            double shade = 175 / Math.log1p(Math.max(1, maxDensity));
+            shades[0] = background;
+            for (int count = 1; count <= maxDensity; count++) {
+                shades[count] = (80 + (int) (Math.log1p(count) * shade)) << 8;
+            }
+        }
+        int minX = width;
+        int minY = height;
+        int maxX = 0;
+        int maxY = 0;
+        for (int tile = 0; tile < dirty.length; tile++) {
+            if (!dirty[tile]) {
+                continue;
+            }
+            int x0 = (tile % tilesX) << tileShift;
+            int y0 = (tile / tilesX) << tileShift;
+            int x1 = Math.min(width, x0 + (1 << tileShift));
+            int y1 = Math.min(height, y0 + (1 << tileShift));
+            for (int y = y0; y < y1; y++) {
+                for (int p = y * width + x0, end = y * width + x1; p < end; p++) {
+                    pixels[p] = shades[density[p]];
+                }
+            }
+            minX = Math.min(minX, x0);
+            minY = Math.min(minY, y0);
+            maxX = Math.max(maxX, x1);
+            maxY = Math.max(maxY, y1);
+        }
+        for (int a = 0; a < next.length; a++) {
+            int b = next[a];
+            if (touchesDirty(a, b)) {
+                // Always from the same end, as the pixels of a line depend on its direction
+                int from = Math.min(a, b);
+                int to = Math.max(a, b);
+                line(pixelX[from], pixelY[from], pixelX[to], pixelY[to]);
+            }
+        }
+        return new Rectangle(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    /**
+     * Rasterise a line (Bresenham), writing only the pixels of marked tiles.
+     */
+    private void line(int x0, int y0, int x1, int y1) {
+        int dx = Math.abs(x1 - x0);
+        int dy = -Math.abs(y1 - y0);
+        int sx = x0 < x1 ? 1 : -1;
+        int sy = y0 < y1 ? 1 : -1;
+        int error = dx + dy;
+        while (true) {
+            if (dirty[(y0 >> tileShift) * tilesX + (x0 >> tileShift)]) {
+                int p = y0 * width + x0;
+                pixels[p] = shades[density[p]] | edgeColour;
+            }
+            if (x0 == x1 && y0 == y1) {
+                return;
+            }
+            int doubled = 2 * error;
+            if (doubled >= dy) {
+                error += dy;
+                x0 += sx;
+            }
+            if (doubled <= dx) {
+                error += dx;
+                y0 += sy;
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.swing.JComponent;
+import javax.swing.Timer;
+
+/**
+ * Draws the cities and the best tour, apart from the solver.
+ *
+ * The solver hands over a snapshot of the best tour after every generation
+ * in which the cities moved or the best cost changed, and carries on; a
+ * Swing timer on the event dispatch thread draws the most recent one, at
+ * most a fixed number of times a second, and snapshots that arrive between
+ * frames are dropped. Three snapshots are cycled between the
+ * solver and the view (one being filled, one waiting, one being drawn), so
+ * handing one over allocates nothing once they exist. Frames are drawn by a
+ * TourRaster into a back buffer that is kept from frame to frame, and only
+ * the part of it that changed is repainted.
+ */
+class TourView extends JComponent {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The most frames drawn per second.
+     */
+    private static final int maxFrameRate = 30;
+
+    /**
+     * The cities and best tour after a generation.
+     */
+    private static final class Snapshot {
+        City[] cities;
+        int[] tour;
+    }
+
+    /**
+     * The newest snapshot not yet drawn, or null.
+     */
+    private final AtomicReference<Snapshot> latest = new AtomicReference<Snapshot>();
+
+    /**
+     * A snapshot the view has finished drawing, for the solver to reuse.
+     */
+    private final AtomicReference<Snapshot> drawn = new AtomicReference<Snapshot>();
+
+    /**
+     * A snapshot the view never took, kept by the solver to reuse. Only
+     * touched by the solver.
+     */
+    private Snapshot spare;
+
+    /**
+     * The cities and cost of the last tour handed over. Only touched by the
+     * solver.
+     */
+    private City[] shownCities;
+    private double shownCost;
+
+    private final BufferedImage buffer;
+    private final TourRaster raster;
+
+    /**
+     * @param width  The width of the city map.
+     * @param height The height of the city map.
+     */
+    TourView(int width, int height) {
+        this.buffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        this.raster = new TourRaster(buffer);
+        setPreferredSize(new Dimension(width, height));
+        Timer timer = new Timer(1000 / maxFrameRate, e -> nextFrame());
+        timer.setCoalesce(true);
+        timer.start();
+    }
+
+    /**
+     * Hand over the state after a generation. Called by the solver; never
+     * waits for the view.
+     *
+     * @param cities The current city positions. Not modified afterwards.
+     * @param best   The best tour, which is copied.
+     */
+    void show(City[] cities, Chromosome best) {
+        if (cities == shownCities && best.getCost() == shownCost) {
+            // Most likely the same tour, which the view already has
+            return;
+        }
+        shownCities = cities;
+        shownCost = best.getCost();
+        Snapshot snapshot = spare;
+        if (snapshot == null) {
+            snapshot = drawn.getAndSet(null);
+        }
+        if (snapshot == null) {
+            snapshot = new Snapshot();
+        }
+        if (snapshot.tour == null || snapshot.tour.length != best.n) {
+            snapshot.tour = new int[best.n];
+        }
+        best.copyCities(snapshot.tour);
+        snapshot.cities = cities;
+        // Whatever the view has not taken yet is out of date
+        spare = latest.getAndSet(snapshot);
+    }
+
+    /**
+     * Draw the newest snapshot into the back buffer, if there is one.
+     */
+    private void nextFrame() {
+        Snapshot snapshot = latest.getAndSet(null);
+        if (snapshot == null) {
+            return;
+        }
+        Rectangle changed = raster.draw(snapshot.cities, snapshot.tour);
+        drawn.set(snapshot);
+        if (changed != null) {
+            repaint(changed);
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        g.drawImage(buffer, 0, 0, null);
+    }
+}
@@ -0,0 +1,266 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Time-dependent travel costs: the cost of an edge is its distance times a
+ * multiplier that depends on the time of departure, such as rush hour
+ * congestion on a road network.
+ *
+ * Multipliers come from a few profiles. A profile is a piecewise linear
+ * function over a repeating period, given by its value at equally spaced
+ * breakpoints, so all profiles share their time buckets. Each city has a
+ * profile for the edges leaving it, and single edges can be given a profile
+ * of their own. The slope and intercept of every profile in every bucket
+ * are tabulated, so a multiplier costs a multiply and an add.
+ *
+ * A tour starts from city 0, the depot, at the start time, and its cost is
+ * the time until it is back. The walk keeps the current time bucket and
+ * steps it forward, as time only grows along the tour, rather than dividing
+ * to find the bucket of every edge.
+ *
+ * The file lists, one per line: "period P" and "start T" (defaults 1440 and
+ * 0); "profile v1 v2 ... vB", the multipliers at the B breakpoints of the
+ * next profile, numbered from 0; "city i p", city i's edges use profile p
+ * (default 0); and "edge i j p", the edge from i to j uses profile p. Blank
+ * lines and lines starting with # are skipped.
+ */
+class TravelTimes {
+
+    /**
+     * The most profiles a file can define.
+     */
+    private static final int MAX_PROFILES = 256;
+
+    /**
+     * The length of each time bucket, and how many make up the period.
+     */
+    private final double width;
+    private final int buckets;
+
+    /**
+     * When tours leave the depot.
+     */
+    private final double start;
+
+    /**
+     * The multiplier of profile p at offset s into bucket b is
+     * intercept[p * buckets + b] + slope[p * buckets + b] * s.
+     */
+    private final double[] intercept;
+    private final double[] slope;
+
+    /**
+     * The profile of the edges leaving each city.
+     */
+    private final byte[] cityProfiles;
+
+    /**
+     * Edges with a profile of their own, in an open addressing table keyed
+     * by i * n + j + 1, zero marking an empty slot.
+     */
+    private final long[] edgeKeys;
+    private final byte[] edgeProfiles;
+    private final int edgeCount;
+
+    private TravelTimes(double period, double start, List<double[]> profiles, byte[] cityProfiles,
+            long[] edgeKeys, byte[] edgeProfiles, int edgeCount) {
+        this.start = start;
+        this.buckets = profiles.get(0).length;
+        this.width = period / buckets;
+        this.intercept = new double[profiles.size() * buckets];
+        this.slope = new double[profiles.size() * buckets];
+        for (int p = 0; p < profiles.size(); p++) {
+            double[] values = profiles.get(p);
+            for (int b = 0; b < buckets; b++) {
+                intercept[p * buckets + b] = values[b];
+                slope[p * buckets + b] = (values[(b + 1) % buckets] - values[b]) / width;
+            }
+        }
+        this.cityProfiles = cityProfiles;
+        this.edgeKeys = edgeKeys;
+        this.edgeProfiles = edgeProfiles;
+        this.edgeCount = edgeCount;
+    }
+
+    /**
+     * The cost of a tour, from the depot at the start time back to it.
+     *
+     * @param distances The distances between the cities, the travel costs at
+     *                  a multiplier of one.
+     * @param tours     An array holding the tour.
+     * @param offset    Where the tour starts in tours.
+     * @param n         The number of cities, which visits them in order.
+     * @return The time the tour takes.
+     */
+    double tourCost(DistanceMatrix distances, int[] tours, int offset, int n) {
+        int depot = 0;
+        while (tours[offset + depot] != 0) {
+            depot++;
+        }
+        double time = start;
+        long index = (long) Math.floor(time / width);
+        double end = (index + 1) * width;
+        int bucket = (int) (index % buckets);
+        int from = tours[offset + depot];
+        for (int k = 1; k <= n; k++) {
+            int at = depot + k;
+            int to = tours[offset + (at >= n ? at - n : at)];
+            if (time >= end) {
+                if (time < end + width) {
+                    index++;
+                    bucket = bucket + 1 == buckets ? 0 : bucket + 1;
+                } else {
+                    // A long edge skipped buckets
+                    index = (long) Math.floor(time / width);
+                    bucket = (int) (index % buckets);
+                }
+                end = (index + 1) * width;
+            }
+            int slot = profile(from, to, n) * buckets + bucket;
+            double multiplier = intercept[slot] + slope[slot] * (time - index * width);
+            time += distances.get(from, to) * multiplier;
+            from = to;
+        }
+        return time - start;
+    }
+
+    private int profile(int from, int to, int n) {
+        if (edgeCount > 0) {
+            long key = (long) from * n + to + 1;
+            int mask = edgeKeys.length - 1;
+            for (int slot = hash(key) & mask; edgeKeys[slot] != 0; slot = (slot + 1) & mask) {
+                if (edgeKeys[slot] == key) {
+                    return edgeProfiles[slot] & 0xFF;
+                }
+            }
+        }
+        return cityProfiles[from] & 0xFF;
+    }
+
+    private static int hash(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    /**
+     * Read travel time profiles.
+     *
+     * @param path      The file.
+     * @param cityCount The number of cities of the instance.
+     * @return The travel times.
+     * @throws IOException If the file cannot be read or is malformed.
+     */
+    static TravelTimes read(Path path, int cityCount) throws IOException {
+        double period = 1440;
+        double start = 0;
+        List<double[]> profiles = new ArrayList<>();
+        byte[] cityProfiles = new byte[cityCount];
+        List<long[]> edges = new ArrayList<>();
+        int number = 0;
+        try (BufferedReader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                number++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\\s+");
+                try {
+                    switch (fields[0]) {
+                        case "period":
+                            period = Double.parseDouble(fields[1]);
+                            if (!(period > 0)) {
+                                throw error(path, number, "the period must be positive");
+                            }
+                            break;
+                        case "start":
+                            start = Double.parseDouble(fields[1]);
+                            if (!(start >= 0)) {
+                                throw error(path, number, "the start time cannot be negative");
+                            }
+                            break;
+                        case "profile":
+                            double[] values = new double[fields.length - 1];
+                            for (int b = 0; b < values.length; b++) {
+                                values[b] = Double.parseDouble(fields[b + 1]);
+                                if (!(values[b] >= 0)) {
+                                    throw error(path, number, "multipliers cannot be negative");
+                                }
+                            }
+                            if (values.length == 0 || (!profiles.isEmpty() && values.length != profiles.get(0).length)) {
+                                throw error(path, number, "every profile needs the same, non-zero number of values");
+                            }
+                            if (profiles.size() == MAX_PROFILES) {
+                                throw error(path, number, "there can be at most " + MAX_PROFILES + " profiles");
+                            }
+                            profiles.add(values);
+                            break;
+                        case "city":
+                            cityProfiles[city(path, number, fields[1], cityCount)] = (byte) Integer.parseInt(fields[2]);
+                            checkProfile(path, number, Integer.parseInt(fields[2]));
+                            break;
+                        case "edge":
+                            int from = city(path, number, fields[1], cityCount);
+                            int to = city(path, number, fields[2], cityCount);
+                            int profile = Integer.parseInt(fields[3]);
+                            checkProfile(path, number, profile);
+                            edges.add(new long[] {(long) from * cityCount + to + 1, profile, number});
+                            break;
+                        default:
+                            throw error(path, number, "unknown entry \"" + fields[0] + "\"");
+                    }
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    throw error(path, number, "malformed entry \"" + line + "\"");
+                }
+            }
+        }
+        if (profiles.isEmpty()) {
+            throw new IOException(path + " defines no profiles");
+        }
+        for (byte profile : cityProfiles) {
+            if ((profile & 0xFF) >= profiles.size()) {
+                throw new IOException(path + ": a city uses profile " + (profile & 0xFF) + ", which is not defined");
+            }
+        }
+
+        int capacity = Integer.highestOneBit(Math.max(2 * edges.size(), 1)) * 2;
+        long[] edgeKeys = new long[capacity];
+        byte[] edgeProfiles = new byte[capacity];
+        for (long[] edge : edges) {
+            if (edge[1] >= profiles.size()) {
+                throw error(path, (int) edge[2], "profile " + edge[1] + " is not defined");
+            }
+            int slot = hash(edge[0]) & (capacity - 1);
+            while (edgeKeys[slot] != 0 && edgeKeys[slot] != edge[0]) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            edgeKeys[slot] = edge[0];
+            edgeProfiles[slot] = (byte) edge[1];
+        }
+        return new TravelTimes(period, start, profiles, cityProfiles, edgeKeys, edgeProfiles, edges.size());
+    }
+
+    private static int city(Path path, int number, String field, int cityCount) throws IOException {
+        int city = Integer.parseInt(field);
+        if (city < 0 || city >= cityCount) {
+            throw error(path, number, "there is no city " + city);
+        }
+        return city;
+    }
+
+    private static void checkProfile(Path path, int number, int profile) throws IOException {
+        if (profile < 0 || profile >= MAX_PROFILES) {
+            throw error(path, number, "there is no profile " + profile);
+        }
+    }
+
+    private static IOException error(Path path, int number, String message) {
+        return new IOException(path + " line " + number + ": " + message);
+    }
+}
@@ -0,0 +1,472 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Pattern;
+
+/**
+ * An instance read from a file in the TSPLIB format, for benchmarking against
+ * standard instances or for solving over cost matrices that City.proximity
+ * cannot express, such as road network travel times.
+ *
+ * Node coordinates are supported with the EUC_2D, CEIL_2D, ATT and GEO
+ * metrics, and explicit weights as FULL_MATRIX (including asymmetric ATSP
+ * instances), UPPER_ROW, LOWER_ROW, UPPER_DIAG_ROW and LOWER_DIAG_ROW. The
+ * file is tokenized as it streams in, and weights go straight into the
+ * distance matrix's array.
+ *
+ * The cities of an instance are fixed. City objects are still made for the
+ * display and the k-d tree: from the node coordinates, or the display data of
+ * an explicit instance, rounded to whole numbers.
+ */
+class TsplibInstance {
+
+    private final String name;
+    private final City[] cities;
+    private final DistanceMatrix distances;
+
+    /**
+     * Whether the k-d tree over the cities finds near cities, so the
+     * candidate lists can be built from it.
+     */
+    private final boolean planar;
+
+    private CandidateLists neighbours;
+
+    private TsplibInstance(String name, City[] cities, DistanceMatrix distances, boolean planar) {
+        this.name = name;
+        this.cities = cities;
+        this.distances = distances;
+        this.planar = planar;
+    }
+
+    /**
+     * The keywords a TSPLIB file can open its specification part with.
+     */
+    private static final Pattern header = Pattern.compile(
+            "\\s*(NAME|TYPE|COMMENT|DIMENSION|CAPACITY|EDGE_WEIGHT_TYPE|EDGE_WEIGHT_FORMAT"
+            + "|EDGE_DATA_FORMAT|NODE_COORD_TYPE|DISPLAY_DATA_TYPE)\\s*:.*");
+
+    /**
+     * The longest first line looked at by isTsplib().
+     */
+    private static final int headerLimit = 1024;
+
+    /**
+     * @param path A file.
+     * @return Whether the file looks like a TSPLIB file, its first non-blank
+     *         line being a specification keyword followed by a colon.
+     * @throws IOException If the file cannot be read.
+     */
+    static boolean isTsplib(Path path) throws IOException {
+        // Latin-1 decodes any bytes, so a binary file is rejected rather than failing
+        try (Reader in = Files.newBufferedReader(path, StandardCharsets.ISO_8859_1)) {
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) >= 0 && line.length() < headerLimit) {
+                if (c == '\n' || c == '\r') {
+                    if (line.toString().trim().isEmpty()) {
+                        line.setLength(0);
+                        continue;
+                    }
+                    break;
+                }
+                line.append((char) c);
+            }
+            return header.matcher(line).matches();
+        }
+    }
+
+    /**
+     * Read an instance.
+     *
+     * @param path The file.
+     * @return The instance.
+     * @throws IOException If the file cannot be read, is malformed, or uses a
+     *                     feature that is not supported.
+     */
+    static TsplibInstance read(Path path) throws IOException {
+        try (Reader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return new Parser(in, path.toString()).parse();
+        }
+    }
+
+    /**
+     * @return The NAME of the instance.
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return The cities, for display.
+     */
+    City[] getCities() {
+        return cities;
+    }
+
+    /**
+     * @return The distances between the cities.
+     */
+    DistanceMatrix getDistances() {
+        return distances;
+    }
+
+    /**
+     * @param k How many neighbours to keep per city.
+     * @return Candidate lists for the instance, built on first use and
+     *         shared after that, as they never change.
+     */
+    synchronized CandidateLists candidates(int k) {
+        if (neighbours == null || neighbours.k() != Math.min(k, cities.length - 1)) {
+            neighbours = planar ? new CandidateLists(cities, k) : new CandidateLists(distances, k);
+        }
+        return neighbours;
+    }
+
+    /**
+     * Reads one file: "KEY : VALUE" specification lines, then sections of
+     * whitespace separated numbers.
+     */
+    private static class Parser {
+
+        private final Reader in;
+        private final String source;
+        private final char[] buffer = new char[1 << 16];
+        private int position;
+        private int limit;
+        private int line = 1;
+        private final StringBuilder token = new StringBuilder();
+
+        private String name = "";
+        private String type = "TSP";
+        private int dimension = -1;
+        private String weightType;
+        private String weightFormat;
+        private double[] xs;
+        private double[] ys;
+        private int[] weights;
+        private double[] displayXs;
+        private double[] displayYs;
+
+        Parser(Reader in, String source) {
+            this.in = in;
+            this.source = source;
+        }
+
+        TsplibInstance parse() throws IOException {
+            String keyword;
+            while ((keyword = nextToken()) != null && !keyword.equals("EOF")) {
+                if (keyword.endsWith(":")) {
+                    keyword = keyword.substring(0, keyword.length() - 1);
+                }
+                switch (keyword) {
+                    case "NODE_COORD_SECTION":
+                        requireDimension(keyword);
+                        xs = new double[dimension];
+                        ys = new double[dimension];
+                        readCoordinates(xs, ys);
+                        break;
+                    case "DISPLAY_DATA_SECTION":
+                        requireDimension(keyword);
+                        displayXs = new double[dimension];
+                        displayYs = new double[dimension];
+                        readCoordinates(displayXs, displayYs);
+                        break;
+                    case "EDGE_WEIGHT_SECTION":
+                        requireDimension(keyword);
+                        readWeights();
+                        break;
+                    default:
+                        specification(keyword, value());
+                }
+            }
+            return build();
+        }
+
+        private void specification(String keyword, String value) throws IOException {
+            switch (keyword) {
+                case "NAME":
+                    name = value;
+                    break;
+                case "TYPE":
+                    type = value.toUpperCase();
+                    if (!type.equals("TSP") && !type.equals("ATSP")) {
+                        throw error("TYPE " + value + " is not supported");
+                    }
+                    break;
+                case "DIMENSION":
+                    try {
+                        dimension = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        throw error("DIMENSION " + value + " is not a number");
+                    }
+                    if (dimension < 1) {
+                        throw error("DIMENSION must be positive");
+                    }
+                    break;
+                case "EDGE_WEIGHT_TYPE":
+                    weightType = value.toUpperCase();
+                    break;
+                case "EDGE_WEIGHT_FORMAT":
+                    weightFormat = value.toUpperCase();
+                    break;
+                case "NODE_COORD_TYPE":
+                    if (!value.equalsIgnoreCase("TWOD_COORDS") && !value.equalsIgnoreCase("NO_COORDS")) {
+                        throw error("NODE_COORD_TYPE " + value + " is not supported");
+                    }
+                    break;
+                default:
+                    // COMMENT, CAPACITY, DISPLAY_DATA_TYPE and the like
+                    break;
+            }
+        }
+
+        private TsplibInstance build() throws IOException {
+            requireDimension("the end of the file");
+            if (weightType == null) {
+                throw error("EDGE_WEIGHT_TYPE is missing");
+            }
+            DistanceMatrix distances;
+            boolean planar;
+            if (weightType.equals("EXPLICIT")) {
+                if (weights == null) {
+                    throw error("EDGE_WEIGHT_SECTION is missing");
+                }
+                distances = new DistanceMatrix(dimension, !type.equals("ATSP"), weights);
+                planar = false;
+            } else {
+                DistanceMatrix.Metric metric;
+                try {
+                    metric = DistanceMatrix.Metric.valueOf(weightType);
+                } catch (IllegalArgumentException e) {
+                    throw error("EDGE_WEIGHT_TYPE " + weightType + " is not supported");
+                }
+                if (xs == null) {
+                    throw error("NODE_COORD_SECTION is missing");
+                }
+                if (type.equals("ATSP")) {
+                    throw error("an ATSP instance needs explicit weights");
+                }
+                distances = new DistanceMatrix(metric, xs, ys);
+                planar = metric.isPlanar();
+            }
+
+            City[] cities = new City[dimension];
+            double[] cityXs = displayXs != null ? displayXs : xs;
+            double[] cityYs = displayYs != null ? displayYs : ys;
+            for (int i = 0; i < dimension; i++) {
+                cities[i] = cityXs == null
+                        ? new City(0, 0)
+                        : new City((int) Math.round(cityXs[i]), (int) Math.round(cityYs[i]));
+            }
+            return new TsplibInstance(name, cities, distances, planar);
+        }
+
+        private void requireDimension(String where) throws IOException {
+            if (dimension < 0) {
+                throw error("DIMENSION must come before " + where);
+            }
+        }
+
+        /**
+         * Read dimension lines of "node x y", nodes numbered from 1.
+         */
+        private void readCoordinates(double[] xs, double[] ys) throws IOException {
+            for (int i = 0; i < dimension; i++) {
+                int node = (int) number();
+                if (node < 1 || node > dimension) {
+                    throw error("node " + node + " is out of range");
+                }
+                xs[node - 1] = number();
+                ys[node - 1] = number();
+            }
+        }
+
+        /**
+         * Read the weights in the given format into the layout the distance
+         * matrix expects: the strict lower triangle for symmetric instances,
+         * the full matrix for asymmetric ones.
+         */
+        private void readWeights() throws IOException {
+            if (weightFormat == null) {
+                throw error("EDGE_WEIGHT_FORMAT is missing");
+            }
+            int n = dimension;
+            boolean asymmetric = type.equals("ATSP");
+            long cells = asymmetric ? (long) n * n : (long) n * (n - 1) / 2;
+            if (cells > Integer.MAX_VALUE - 8) {
+                throw error(n + " cities are too many for an explicit matrix");
+            }
+            if (asymmetric && !weightFormat.equals("FULL_MATRIX")) {
+                throw error("an ATSP instance needs a FULL_MATRIX");
+            }
+            weights = new int[(int) cells];
+            switch (weightFormat) {
+                case "FULL_MATRIX":
+                    for (int i = 0; i < n; i++) {
+                        for (int j = 0; j < n; j++) {
+                            int weight = weight();
+                            if (asymmetric) {
+                                weights[i * n + j] = weight;
+                            } else if (i > j) {
+                                weights[i * (i - 1) / 2 + j] = weight;
+                            }
+                        }
+                    }
+                    break;
+                case "UPPER_ROW":
+                case "UPPER_DIAG_ROW":
+                    boolean upperDiagonal = weightFormat.equals("UPPER_DIAG_ROW");
+                    for (int i = 0; i < n; i++) {
+                        if (upperDiagonal) {
+                            weight();
+                        }
+                        for (int j = i + 1; j < n; j++) {
+                            weights[j * (j - 1) / 2 + i] = weight();
+                        }
+                    }
+                    break;
+                case "LOWER_ROW":
+                case "LOWER_DIAG_ROW":
+                    boolean lowerDiagonal = weightFormat.equals("LOWER_DIAG_ROW");
+                    int k = 0;
+                    for (int i = 0; i < n; i++) {
+                        for (int j = 0; j < i; j++) {
+                            weights[k++] = weight();
+                        }
+                        if (lowerDiagonal) {
+                            weight();
+                        }
+                    }
+                    break;
+                default:
+                    throw error("EDGE_WEIGHT_FORMAT " + weightFormat + " is not supported");
+            }
+        }
+
+        /**
+         * @return The next token as a whole number weight.
+         */
+        private int weight() throws IOException {
+            if (!advance()) {
+                throw error("the EDGE_WEIGHT_SECTION ends early");
+            }
+            // Most weights are plain integers; parse them without a String
+            int length = token.length();
+            int i = token.charAt(0) == '-' ? 1 : 0;
+            long value = 0;
+            for (int c = i; c < length; c++) {
+                char digit = token.charAt(c);
+                if (digit < '0' || digit > '9' || value > Integer.MAX_VALUE) {
+                    return (int) Math.round(tokenValue());
+                }
+                value = value * 10 + (digit - '0');
+            }
+            if (i == length || value > Integer.MAX_VALUE) {
+                return (int) Math.round(tokenValue());
+            }
+            return (int) (i == 1 ? -value : value);
+        }
+
+        /**
+         * @return The next token as a number.
+         */
+        private double number() throws IOException {
+            if (!advance()) {
+                throw error("a section ends early");
+            }
+            return tokenValue();
+        }
+
+        private double tokenValue() throws IOException {
+            try {
+                return Double.parseDouble(token.toString());
+            } catch (NumberFormatException e) {
+                throw error("expected a number but found \"" + token + "\"");
+            }
+        }
+
+        /**
+         * @return The rest of the current line, without a leading colon.
+         */
+        private String value() throws IOException {
+            token.setLength(0);
+            int c;
+            while ((c = read()) >= 0 && c != '\n') {
+                token.append((char) c);
+            }
+            if (c == '\n') {
+                line++;
+            }
+            String value = token.toString().trim();
+            if (value.startsWith(":")) {
+                value = value.substring(1).trim();
+            }
+            return value;
+        }
+
+        /**
+         * @return The next whitespace separated token, or null at the end of
+         *         the file.
+         */
+        private String nextToken() throws IOException {
+            return advance() ? token.toString() : null;
+        }
+
+        /**
+         * Read the next whitespace separated token into token.
+         *
+         * @return Whether there was one before the end of the file.
+         */
+        private boolean advance() throws IOException {
+            token.setLength(0);
+            int c;
+            while ((c = read()) >= 0 && Character.isWhitespace(c)) {
+                if (c == '\n') {
+                    line++;
+                }
+            }
+            if (c < 0) {
+                return false;
+            }
+            do {
+                token.append((char) c);
+            } while ((c = peek()) >= 0 && !Character.isWhitespace(c) && c != ':' && read() >= 0);
+            if (c == ':') {
+                // Keep "KEY:" together so it is told apart from a value
+                token.append((char) read());
+            }
+            return true;
+        }
+
+        private int read() throws IOException {
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            return buffer[position++];
+        }
+
+        private int peek() throws IOException {
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            return buffer[position];
+        }
+
+        private boolean fill() throws IOException {
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return false;
+            }
+            return true;
+        }
+
+        private IOException error(String message) {
+            return new IOException(source + " line " + line + ": " + message);
+        }
+    }
+}
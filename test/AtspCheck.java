@@ -0,0 +1,62 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Checks that the cost of a tour over an asymmetric (ATSP) instance follows
+ * the tour's direction, closing edge included, against a sum worked out by
+ * hand.
+ *
+ * Run with: java -cp build/classes:build/test/classes AtspCheck
+ */
+class AtspCheck {
+
+    /**
+     * weights[i][j] is the cost of going from city i to city j.
+     */
+    private static final int[][] weights = {
+        {0, 10, 200, 300},
+        {1000, 0, 20, 400},
+        {2000, 3000, 0, 30},
+        {40, 4000, 5000, 0},
+    };
+
+    public static void main(String[] args) throws IOException {
+        Path file = Files.createTempFile("atspcheck", ".atsp");
+        try {
+            StringBuilder instance = new StringBuilder("NAME : check\nTYPE : ATSP\nDIMENSION : 4\n"
+                    + "EDGE_WEIGHT_TYPE : EXPLICIT\nEDGE_WEIGHT_FORMAT : FULL_MATRIX\nEDGE_WEIGHT_SECTION\n");
+            for (int[] row : weights) {
+                for (int weight : row) {
+                    instance.append(weight).append(' ');
+                }
+                instance.append('\n');
+            }
+            instance.append("EOF\n");
+            Files.write(file, instance.toString().getBytes(StandardCharsets.UTF_8));
+            DistanceMatrix distances = TsplibInstance.read(file).getDistances();
+
+            // 0 -> 1 -> 2 -> 3 and back to 0: 10 + 20 + 30 + 40
+            expect(distances, new int[] {0, 1, 2, 3}, 100);
+            // The same cycle the other way round: 3 -> 2 -> 1 -> 0 and back to 3
+            expect(distances, new int[] {3, 2, 1, 0}, 5000 + 3000 + 1000 + 300);
+            // Starting elsewhere on the first cycle changes nothing
+            expect(distances, new int[] {2, 3, 0, 1}, 100);
+        } finally {
+            Files.delete(file);
+        }
+        System.out.println("AtspCheck passed");
+    }
+
+    private static void expect(DistanceMatrix distances, int[] tour, double cost) {
+        Chromosome chromosome = new Chromosome(tour);
+        chromosome.setCities(tour);
+        chromosome.calculateCost(distances);
+        if (chromosome.getCost() != cost) {
+            throw new AssertionError("Failed: tour " + Arrays.toString(tour) + " costs "
+                    + chromosome.getCost() + ", not " + cost);
+        }
+    }
+}
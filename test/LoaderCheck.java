@@ -0,0 +1,78 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+/**
+ * Checks that TSP.loadCities reads the same cities from each of the
+ * supported formats: a text file of "x, y" lines, the binary instance
+ * CityFile converts it to, and a TSPLIB file with node coordinates.
+ *
+ * Run with: java -cp build/classes:build/test/classes LoaderCheck
+ */
+class LoaderCheck {
+
+    private static final int[] xs = {131, 278, 525, 0, 600};
+    private static final int[] ys = {243, 220, 492, 7, 600};
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Files.createTempDirectory("loadercheck");
+        try {
+            Path text = directory.resolve("cities.txt");
+            StringBuilder lines = new StringBuilder("\n");
+            for (int i = 0; i < xs.length; i++) {
+                lines.append(xs[i]).append(", ").append(ys[i]).append('\n');
+            }
+            Files.write(text, lines.toString().getBytes(StandardCharsets.UTF_8));
+            expect("text", TSP.loadCities(text.toString()));
+
+            Path binary = directory.resolve("cities.bin");
+            CityFile.convert(text, binary);
+            check(!TsplibInstance.isTsplib(binary), "a binary instance is not taken for TSPLIB");
+            expect("binary", TSP.loadCities(binary.toString()));
+
+            Path tsplib = directory.resolve("cities.tsp");
+            StringBuilder instance = new StringBuilder("\nNAME : check\nTYPE : TSP\nDIMENSION : " + xs.length
+                    + "\nEDGE_WEIGHT_TYPE : EUC_2D\nNODE_COORD_SECTION\n");
+            for (int i = 0; i < xs.length; i++) {
+                instance.append(i + 1).append(' ').append(xs[i]).append(' ').append(ys[i]).append('\n');
+            }
+            instance.append("EOF\n");
+            Files.write(tsplib, instance.toString().getBytes(StandardCharsets.UTF_8));
+            check(TsplibInstance.isTsplib(tsplib), "a TSPLIB file is recognised");
+            expect("TSPLIB", TSP.loadCities(tsplib.toString()));
+
+            // A letter alone does not make a TSPLIB file
+            Path other = directory.resolve("other.txt");
+            Files.write(other, "Cities follow\n".getBytes(StandardCharsets.UTF_8));
+            check(!TsplibInstance.isTsplib(other), "a file without a TSPLIB keyword is not taken for TSPLIB");
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+        System.out.println("LoaderCheck passed");
+    }
+
+    private static void expect(String format, City[] cities) {
+        int[] loadedXs = new int[cities.length];
+        int[] loadedYs = new int[cities.length];
+        for (int i = 0; i < cities.length; i++) {
+            loadedXs[i] = cities[i].getx();
+            loadedYs[i] = cities[i].gety();
+        }
+        check(Arrays.equals(xs, loadedXs) && Arrays.equals(ys, loadedYs),
+                "the " + format + " file holds the expected cities");
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new AssertionError("Failed: " + what);
+        }
+    }
+}
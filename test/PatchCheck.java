@@ -0,0 +1,80 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks that patching a tour's cost along the edges that touch the moved
+ * cities, the way TSP.relocate does, gives the cost calculateCost works out
+ * from scratch, over a run of partial movements.
+ *
+ * Run with: java -cp build/classes:build/test/classes PatchCheck
+ */
+class PatchCheck {
+
+    private static final int cityCount = 200;
+    private static final int tourCount = 5;
+    private static final int movementCount = 100;
+
+    public static void main(String[] args) {
+        Random random = new Random(7);
+        City[] cities = new City[cityCount];
+        for (int i = 0; i < cityCount; i++) {
+            cities[i] = new City(random.nextInt(1000), random.nextInt(1000));
+        }
+        DistanceMatrix distances = new DistanceMatrix(cities, 0);
+
+        Chromosome[] tours = new Chromosome[tourCount];
+        for (int t = 0; t < tourCount; t++) {
+            int[] tour = new int[cityCount];
+            for (int i = 0; i < cityCount; i++) {
+                tour[i] = i;
+            }
+            for (int i = cityCount - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = tour[i];
+                tour[i] = tour[j];
+                tour[j] = swap;
+            }
+            tours[t] = new Chromosome(tour);
+            tours[t].setCities(tour);
+            tours[t].calculateCost(distances);
+        }
+
+        int[] moved = new int[cityCount];
+        boolean[] isMoved = new boolean[cityCount];
+        Chromosome fresh = new Chromosome(new int[cityCount]);
+        for (int movement = 1; movement <= movementCount; movement++) {
+            // From a single city up to a quarter of them, neighbours in the tours included
+            Arrays.fill(isMoved, false);
+            int count = 0;
+            int wanted = 1 + random.nextInt(cityCount / 4);
+            City[] positions = cities.clone();
+            while (count < wanted) {
+                int city = random.nextInt(cityCount);
+                if (!isMoved[city]) {
+                    isMoved[city] = true;
+                    moved[count++] = city;
+                    positions[city] = new City(random.nextInt(1000), random.nextInt(1000));
+                }
+            }
+
+            for (Chromosome tour : tours) {
+                tour.setCost(tour.getCost() - tour.edgesTouching(distances, moved, count, isMoved));
+            }
+            cities = positions;
+            distances.update(cities, moved, count, movement);
+            for (Chromosome tour : tours) {
+                tour.setCost(tour.getCost() + tour.edgesTouching(distances, moved, count, isMoved));
+            }
+
+            for (Chromosome tour : tours) {
+                fresh.copyFrom(tour);
+                fresh.calculateCost(distances);
+                if (tour.getCost() != fresh.getCost()) {
+                    throw new AssertionError("Failed: after movement " + movement + " of " + count
+                            + " cities, a tour was patched to " + tour.getCost() + ", not " + fresh.getCost());
+                }
+            }
+        }
+        System.out.println("PatchCheck passed");
+    }
+}